@@ -53,6 +53,7 @@ public class Aqua9MappedMultiResolutionImage extends Image implements MultiResol
     private final Image baseImage;
     private final MyVariantMapper mapper;
     private int availableInfo;
+    private volatile ImageCacheKey lastKey;
 
     public Aqua9MappedMultiResolutionImage(MultiResolutionImage source, Function<Image,Image> mapper) {
         this.baseImage = (Image) source;
@@ -109,7 +110,12 @@ public class Aqua9MappedMultiResolutionImage extends Image implements MultiResol
         }
 
         VImageCache cache = VImageCache.getInstance();
-        ImageCacheKey key = new ImageCacheKey(this, width, height);
+        ImageCacheKey key = lastKey;
+        if (key == null || key.w != width || key.h != height) {
+            // Images are usually painted repeatedly at the same size, so the key is reused
+            key = new ImageCacheKey(this, width, height);
+            lastKey = key;
+        }
         Image resolutionVariant = cache.getImage(key);
         if (resolutionVariant == null) {
             resolutionVariant = mapper.apply(width, height);
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2021 Alan Snyder.
+ * Copyright (c) 2018-2026 Alan Snyder.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
@@ -40,6 +40,20 @@ public class AquaAppearance extends BasicAquaAppearance {
         return color;
     }
 
+    /**
+     * Return the color whose name has the specified identifier.
+     * @param id The color name identifier (see {@link ColorNameRegistry}), or -1.
+     * @return the color, as a ColorUIResource, or null if the color name not defined in this appearance.
+     */
+
+    public @Nullable Color getColor(int id) {
+        Color color = super.getColor(id);
+        if (AquaColors.isDebugging()) {
+            Utils.logDebug("  Color " + ColorNameRegistry.getName(id) + ": " + AquaColors.toString(color));
+        }
+        return color;
+    }
+
     /**
      * Return a color modified for a specified effect. If no color is defined for that effect, the basic color is
      * returned.
@@ -54,12 +68,32 @@ public class AquaAppearance extends BasicAquaAppearance {
             return getColor(colorName);
         }
 
-        String extendedName = colorName + "_" + effectName;
-        Color c = getColor(extendedName);
+        return getColorForEffect(ColorNameRegistry.getID(colorName), effectName);
+    }
+
+    /**
+     * Return a color modified for a specified effect. If no color is defined for that effect, the basic color is
+     * returned. This method does not allocate.
+     * @param id The color name identifier (see {@link ColorNameRegistry}), or -1.
+     * @param effectName The effect name.
+     * @return the color as defined by the color name and effect, or the basic color if there is no variable color
+     * defined for the specified effect, or null if the color name is note defined in this appearance.
+     */
+
+    public @Nullable Color getColorForEffect(int id, @NotNull EffectName effectName) {
+        if (id < 0) {
+            return null;
+        }
+
+        if (effectName == EffectName.EFFECT_NONE) {
+            return getColor(id);
+        }
+
+        Color c = getColor(ColorNameRegistry.getEffectID(id, effectName));
         if (c != null) {
             return c;
         }
-        return getColor(colorName);
+        return getColor(id);
     }
 
     /**
@@ -72,12 +106,19 @@ public class AquaAppearance extends BasicAquaAppearance {
      */
 
     public @Nullable Color getColorForOptionalEffect(@NotNull String colorName, @NotNull EffectName effectName) {
-        if (effectName == EffectName.EFFECT_NONE) {
-            return getColor(colorName);
-        }
+        return getColorForEffect(colorName, effectName);
+    }
+
+    /**
+     * Return a color modified for a specified effect. If no color is defined for that effect, the basic color is
+     * returned.
+     * @param id The color name identifier (see {@link ColorNameRegistry}), or -1.
+     * @param effectName The effect name.
+     * @return the color as defined by the color name and effect, or the basic color if there is no variable color
+     * defined for the specified effect, or null if the color name is note defined in this appearance.
+     */
 
-        String extendedName = colorName + "_" + effectName;
-        Color c = getColor(extendedName);
-        return c != null ? c : getColor(colorName);
+    public @Nullable Color getColorForOptionalEffect(int id, @NotNull EffectName effectName) {
+        return getColorForEffect(id, effectName);
     }
 }
@@ -31,6 +31,7 @@ public class AquaAppearances {
     private static final @NotNull Map<String,AquaAppearance> appearances = new HashMap<>();
     private static final @NotNull String defaultAppearanceName = "NSAppearanceNameAqua";
     public static final Object APPEARANCE_CHANGE_TYPE = "AppearanceChange";
+    private static volatile int generation;
 
     static {
         VAppearances.addChangeListener(AquaAppearances::appearanceChanged);
@@ -105,6 +106,15 @@ public class AquaAppearances {
         return get(VAppearances.vibrantLightAppearance);
     }
 
+    /**
+     * Return the appearance generation. The generation changes when a system appearance is updated. Information
+     * derived from an appearance may be discarded when the generation changes.
+     */
+
+    public static int getGeneration() {
+        return generation;
+    }
+
     /**
      * Register a component whose UI is to be notified when the system appearance has changed or the colors associated
      * with the existing system appearance may have changed.
@@ -132,6 +142,8 @@ public class AquaAppearances {
                 // Must be an older release
             }
             AquaAppearance appearance = getAquaAppearance(a);
+            generation++;
+            RenderedImageCache.getInstance().flush();
             SwingUtilities.invokeLater(() -> {
                 SystemPropertyChangeManager.notifyChange(APPEARANCE_CHANGE_TYPE);
             });
@@ -133,9 +133,7 @@ public abstract class AquaButtonBorder extends AquaBorder implements FocusRingOu
         int height = viewRect.height;
 
         AppearanceManager.ensureAppearance(b);
-        AquaUtils.configure(painter, b, width, height);
-        org.violetlib.jnr.Painter p = painter.getPainter(bg);
-        p.paint(g, x, y);
+        RenderedImageCache.paint(g, painter, b, bg, x, y, width, height);
 
         // The following code is obsolete, as JNR now does the full rendering of a color well button.
         // It remains here just in case VAqua is used with an older version of JNR.
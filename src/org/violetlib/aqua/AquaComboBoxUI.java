@@ -391,9 +391,10 @@ public class AquaComboBoxUI extends BasicComboBoxUI
         // paint the button
 
         Configuration bg = getConfiguration();
-        AquaUtils.configure(painter, comboBox, width, height);
         if (bg != null) {
-            painter.getPainter(bg).paint(g, 0, 0);
+            RenderedImageCache.paint(g, painter, comboBox, bg, 0, 0, width, height);
+        } else {
+            AquaUtils.configure(painter, comboBox, width, height);
         }
 
         if (!comboBox.isEditable()) {
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2021 Alan Snyder.
+ * Copyright (c) 2018-2026 Alan Snyder.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
@@ -9,6 +9,7 @@
 package org.violetlib.aqua;
 
 import java.awt.*;
+import java.util.IdentityHashMap;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -42,6 +43,13 @@ public class AquaContextualColorImpl implements ContextualColor {
     protected @Nullable String inactiveDisabledSelectedName;
     protected @Nullable String activeDefaultSelectedName;
 
+    // Identifiers of the color names, created when needed
+    private @Nullable Identifiers identifiers;
+
+    // Resolved colors for the most recently used appearance, and for other appearances
+    private volatile @Nullable ColorTable lastTable;
+    private final @NotNull IdentityHashMap<AquaAppearance,ColorTable> tables = new IdentityHashMap<>();
+
     // Most components use the same color when inactive or disabled.
     // In this case, either the disabled or inactive color name may be set.
 
@@ -61,6 +69,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setBasicName(@NotNull String basicName) {
         this.basicName = basicName;
+        invalidate();
     }
 
     public void setAllNames() {
@@ -75,6 +84,7 @@ public class AquaContextualColorImpl implements ContextualColor {
         this.disabledName = name + "_disabled";
         this.inactiveDisabledName = name + "_inactive_disabled";
         this.activeDefaultName = name + "_focused";
+        invalidate();
 
         String selectedName = AquaColors.createSelectedColorName(basicName);
         setAllSelectedNames(selectedName);
@@ -88,6 +98,7 @@ public class AquaContextualColorImpl implements ContextualColor {
         this.disabledSelectedName = selectedName + "_disabled";
         this.inactiveDisabledSelectedName = selectedName + "_inactive_disabled";
         this.activeDefaultSelectedName = selectedName + "_focused";
+        invalidate();
     }
 
     public @Nullable String getRolloverName() {
@@ -96,6 +107,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setRolloverName(@Nullable String rolloverName) {
         this.rolloverName = rolloverName;
+        invalidate();
     }
 
     public @Nullable String getIconPressedName() {
@@ -104,6 +116,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setIconPressedName(@Nullable String iconPressedName) {
         this.iconPressedName = iconPressedName;
+        invalidate();
     }
 
     public @Nullable String getPressedSelectedName() {
@@ -112,6 +125,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setPressedSelectedName(@Nullable String pressedSelectedName) {
         this.pressedSelectedName = pressedSelectedName;
+        invalidate();
     }
 
     public @Nullable String getRolloverSelectedName() {
@@ -120,6 +134,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setRolloverSelectedName(@Nullable String rolloverSelectedName) {
         this.rolloverSelectedName = rolloverSelectedName;
+        invalidate();
     }
 
     public @Nullable String getPressedName() {
@@ -128,6 +143,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setPressedName(@Nullable String pressedName) {
         this.pressedName = pressedName;
+        invalidate();
     }
 
     public @Nullable String getInactiveDisabledSelectedName() {
@@ -136,6 +152,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setInactiveDisabledSelectedName(@Nullable String inactiveDisabledSelectedName) {
         this.inactiveDisabledSelectedName = inactiveDisabledSelectedName;
+        invalidate();
     }
 
     public @Nullable String getInactiveDisabledName() {
@@ -144,6 +161,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setInactiveDisabledName(@Nullable String inactiveDisabledName) {
         this.inactiveDisabledName = inactiveDisabledName;
+        invalidate();
     }
 
     public @Nullable String getDisabledSelectedName() {
@@ -152,6 +170,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setDisabledSelectedName(@Nullable String disabledSelectedName) {
         this.disabledSelectedName = disabledSelectedName;
+        invalidate();
     }
 
     public @Nullable String getDisabledName() {
@@ -160,6 +179,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setDisabledName(@Nullable String disabledName) {
         this.disabledName = disabledName;
+        invalidate();
     }
 
     public @Nullable String getInactiveSelectedName() {
@@ -168,6 +188,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setInactiveSelectedName(@Nullable String inactiveSelectedName) {
         this.inactiveSelectedName = inactiveSelectedName;
+        invalidate();
     }
 
     public @Nullable String getInactiveName() {
@@ -176,6 +197,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setInactiveName(@Nullable String inactiveName) {
         this.inactiveName = inactiveName;
+        invalidate();
     }
 
     public @Nullable String getSelectedName() {
@@ -184,6 +206,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setSelectedName(@Nullable String selectedName) {
         this.selectedName = selectedName;
+        invalidate();
     }
 
     public @Nullable String getActiveDefaultName() {
@@ -192,6 +215,7 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setActiveDefaultName(@Nullable String activeDefaultName) {
         this.activeDefaultName = activeDefaultName;
+        invalidate();
     }
 
     public @Nullable String getActiveDefaultSelectedName() {
@@ -200,10 +224,90 @@ public class AquaContextualColorImpl implements ContextualColor {
 
     public void setActiveDefaultSelectedName(@Nullable String activeDefaultSelectedName) {
         this.activeDefaultSelectedName = activeDefaultSelectedName;
+        invalidate();
+    }
+
+    /**
+     * Discard the resolved colors and color name identifiers, because a color name has changed.
+     */
+
+    private void invalidate() {
+        identifiers = null;
+        synchronized (tables) {
+            lastTable = null;
+            tables.clear();
+        }
     }
 
     @Override
     public @NotNull Color get(@NotNull AppearanceContext context) {
+        if (AquaColors.isDebugging()) {
+            return resolve(context);
+        }
+
+        AquaAppearance appearance = context.getAppearance();
+        int generation = AquaAppearances.getGeneration();
+        ColorTable table = lastTable;
+        if (table == null || table.appearance != appearance || table.generation != generation) {
+            table = getTable(appearance, generation);
+        }
+
+        int key = ColorTable.getKey(context);
+        Color c = table.colors[key];
+        if (c == null) {
+            c = resolve(context);
+            table.colors[key] = c;
+        }
+        return c;
+    }
+
+    private @NotNull ColorTable getTable(@NotNull AquaAppearance appearance, int generation) {
+        synchronized (tables) {
+            ColorTable table = tables.get(appearance);
+            if (table == null || table.generation != generation) {
+                if (table != null) {
+                    // The appearances have changed. The tables for other appearances are also obsolete.
+                    tables.clear();
+                }
+                table = new ColorTable(appearance, generation);
+                tables.put(appearance, table);
+            }
+            lastTable = table;
+            return table;
+        }
+    }
+
+    /**
+     * A table of the resolved colors for one appearance, indexed by a key that combines the state and the selected and
+     * icon attributes of the context. Entries are filled in when first used. The table is valid only for the
+     * appearance generation in which it was created.
+     */
+
+    private static class ColorTable {
+        private static final int STATE_COUNT = AquaUIPainter.State.values().length;
+
+        final @NotNull AquaAppearance appearance;
+        final int generation;
+        final @NotNull Color[] colors = new Color[STATE_COUNT * 4];
+
+        ColorTable(@NotNull AquaAppearance appearance, int generation) {
+            this.appearance = appearance;
+            this.generation = generation;
+        }
+
+        static int getKey(@NotNull AppearanceContext context) {
+            int key = context.getState().ordinal() * 4;
+            if (context.isSelected()) {
+                key += 2;
+            }
+            if (context.isIcon()) {
+                key += 1;
+            }
+            return key;
+        }
+    }
+
+    private @NotNull Color resolve(@NotNull AppearanceContext context) {
 
         AquaAppearance appearance = context.getAppearance();
         AquaUIPainter.State state = context.getState();
@@ -222,21 +326,23 @@ public class AquaContextualColorImpl implements ContextualColor {
             Utils.logDebug(message);
         }
 
+        Identifiers ids = getIdentifiers();
+
         if (state == ROLLOVER) {
-            if (isSelected && rolloverSelectedName != null) {
-                Color c = appearance.getColor(rolloverSelectedName);
+            if (isSelected && ids.rolloverSelected >= 0) {
+                Color c = appearance.getColor(ids.rolloverSelected);
                 if (c != null) {
                     return c;
                 }
             }
-            if (rolloverName != null) {
-                Color c = appearance.getColor(rolloverName);
+            if (ids.rollover >= 0) {
+                Color c = appearance.getColor(ids.rollover);
                 if (c != null) {
                     return c;
                 }
             }
             {
-                Color c = appearance.getColorForEffect(basicName, EFFECT_ROLLOVER);
+                Color c = appearance.getColorForEffect(ids.basic, EFFECT_ROLLOVER);
                 if (c != null) {
                     return c;
                 }
@@ -244,26 +350,26 @@ public class AquaContextualColorImpl implements ContextualColor {
         }
 
         if (state == PRESSED) {
-            if (isIcon && iconPressedName != null) {
-                Color c = appearance.getColor(iconPressedName);
+            if (isIcon && ids.iconPressed >= 0) {
+                Color c = appearance.getColor(ids.iconPressed);
                 if (c != null) {
                     return c;
                 }
             }
-            if (isSelected && pressedSelectedName != null) {
-                Color c = appearance.getColor(pressedSelectedName);
+            if (isSelected && ids.pressedSelected >= 0) {
+                Color c = appearance.getColor(ids.pressedSelected);
                 if (c != null) {
                     return c;
                 }
             }
-            if (pressedName != null) {
-                Color c = appearance.getColor(pressedName);
+            if (ids.pressed >= 0) {
+                Color c = appearance.getColor(ids.pressed);
                 if (c != null) {
                     return c;
                 }
             }
             {
-                Color c = appearance.getColorForEffect(basicName, EFFECT_PRESSED);
+                Color c = appearance.getColorForEffect(ids.basic, EFFECT_PRESSED);
                 if (c != null) {
                     return c;
                 }
@@ -271,22 +377,21 @@ public class AquaContextualColorImpl implements ContextualColor {
         }
 
         if (state == DISABLED_INACTIVE) {
-            if (isSelected && inactiveDisabledSelectedName != null) {
-                Color c = appearance.getColor(inactiveDisabledSelectedName);
+            if (isSelected && ids.inactiveDisabledSelected >= 0) {
+                Color c = appearance.getColor(ids.inactiveDisabledSelected);
                 if (c != null) {
                     return c;
                 }
             }
-            if (inactiveDisabledName != null) {
-                Color c = appearance.getColor(inactiveDisabledName);
+            if (ids.inactiveDisabled >= 0) {
+                Color c = appearance.getColor(ids.inactiveDisabled);
                 if (c != null) {
                     return c;
                 }
             }
 
             {
-                String name = basicName + "_inactive_disabled";
-                Color c = appearance.getColor(name);
+                Color c = appearance.getColor(ids.basicInactiveDisabled);
                 if (c != null) {
                     return c;
                 }
@@ -298,28 +403,28 @@ public class AquaContextualColorImpl implements ContextualColor {
 
         if (state == DISABLED) {
             if (isSelected) {
-                if (disabledSelectedName != null) {
-                    Color c = appearance.getColor(disabledSelectedName);
+                if (ids.disabledSelected >= 0) {
+                    Color c = appearance.getColor(ids.disabledSelected);
                     if (c != null) {
                         return c;
                     }
                 }
-                if (selectedName != null) {
-                    Color c = appearance.getColorForEffect(selectedName, EFFECT_DISABLED);
+                if (ids.selected >= 0) {
+                    Color c = appearance.getColorForEffect(ids.selected, EFFECT_DISABLED);
                     if (c != null) {
                         return c;
                     }
                 }
             }
 
-            if (disabledName != null) {
-                Color c = appearance.getColor(disabledName);
+            if (ids.disabled >= 0) {
+                Color c = appearance.getColor(ids.disabled);
                 if (c != null) {
                     return c;
                 }
             }
             {
-                Color c = appearance.getColorForEffect(basicName, EFFECT_DISABLED);
+                Color c = appearance.getColorForEffect(ids.basic, EFFECT_DISABLED);
                 if (c != null) {
                     return c;
                 }
@@ -331,28 +436,28 @@ public class AquaContextualColorImpl implements ContextualColor {
 
         if (state == INACTIVE) {
             if (isSelected) {
-                if (inactiveSelectedName != null) {
-                    Color c = appearance.getColor(inactiveSelectedName);
+                if (ids.inactiveSelected >= 0) {
+                    Color c = appearance.getColor(ids.inactiveSelected);
                     if (c != null) {
                         return c;
                     }
                 }
-                if (selectedName != null) {
-                    Color c = appearance.getColorForEffect(selectedName, EFFECT_DISABLED);
+                if (ids.selected >= 0) {
+                    Color c = appearance.getColorForEffect(ids.selected, EFFECT_DISABLED);
                     if (c != null) {
                         return c;
                     }
                 }
             }
 
-            if (inactiveName != null) {
-                Color c = appearance.getColor(inactiveName);
+            if (ids.inactive >= 0) {
+                Color c = appearance.getColor(ids.inactive);
                 if (c != null) {
                     return c;
                 }
             }
             {
-                Color c = appearance.getColorForEffect(basicName, EFFECT_DISABLED);
+                Color c = appearance.getColorForEffect(ids.basic, EFFECT_DISABLED);
                 if (c != null) {
                     return c;
                 }
@@ -360,30 +465,30 @@ public class AquaContextualColorImpl implements ContextualColor {
         }
 
         if (state == ACTIVE_DEFAULT) {
-            if (isSelected && activeDefaultSelectedName != null) {
-                Color c = appearance.getColor(activeDefaultSelectedName);
+            if (isSelected && ids.activeDefaultSelected >= 0) {
+                Color c = appearance.getColor(ids.activeDefaultSelected);
                 if (c != null) {
                     return c;
                 }
             }
 
-            if (activeDefaultName != null) {
-                Color c = appearance.getColor(activeDefaultName);
+            if (ids.activeDefault >= 0) {
+                Color c = appearance.getColor(ids.activeDefault);
                  if (c != null) {
                      return c;
                  }
             }
         }
 
-        if (isSelected && selectedName != null) {
-            Color c = appearance.getColor(selectedName);
+        if (isSelected && ids.selected >= 0) {
+            Color c = appearance.getColor(ids.selected);
             if (c != null) {
                 return c;
             }
         }
 
         {
-            Color c = appearance.getColor(basicName);
+            Color c = appearance.getColor(ids.basic);
             if (c != null) {
                 return c;
             }
@@ -391,4 +496,40 @@ public class AquaContextualColorImpl implements ContextualColor {
 
         throw new UnsupportedOperationException("No color defined for: " + basicName);
     }
+
+    private @NotNull Identifiers getIdentifiers() {
+        Identifiers ids = identifiers;
+        if (ids == null) {
+            ids = new Identifiers();
+            identifiers = ids;
+        }
+        return ids;
+    }
+
+    /**
+     * The identifiers of the color names (see {@link ColorNameRegistry}). An undefined color name has identifier -1.
+     */
+
+    private class Identifiers {
+        final int basic = id(basicName);
+        final int basicInactiveDisabled = id(basicName + "_inactive_disabled");
+        final int rollover = id(rolloverName);
+        final int pressed = id(pressedName);
+        final int iconPressed = id(iconPressedName);
+        final int inactive = id(inactiveName);
+        final int disabled = id(disabledName);
+        final int inactiveDisabled = id(inactiveDisabledName);
+        final int activeDefault = id(activeDefaultName);
+        final int selected = id(selectedName);
+        final int pressedSelected = id(pressedSelectedName);
+        final int rolloverSelected = id(rolloverSelectedName);
+        final int inactiveSelected = id(inactiveSelectedName);
+        final int disabledSelected = id(disabledSelectedName);
+        final int inactiveDisabledSelected = id(inactiveDisabledSelectedName);
+        final int activeDefaultSelected = id(activeDefaultSelectedName);
+    }
+
+    private static int id(@Nullable String name) {
+        return name != null ? ColorNameRegistry.getID(name) : -1;
+    }
 }
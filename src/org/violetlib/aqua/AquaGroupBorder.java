@@ -88,9 +88,8 @@ public class AquaGroupBorder extends AquaBorder {
         // TBD: state is not currently used, but perhaps someday it will be...
 
         AppearanceManager.ensureAppearance(c);
-        AquaUtils.configure(painter, c, width, height);
         Configuration bg = getConfiguration();
-        painter.getPainter(bg).paint(g, x, y);
+        RenderedImageCache.paint(g, painter, c, bg, x, y, width, height);
     }
 
     protected Configuration getConfiguration() {
@@ -98,9 +98,9 @@ public class AquaIcon {
     }
 
     public static @NotNull Icon createPressedDarkIcon(@NotNull Icon ic) {
-        Image im = getImageForIcon(ic);
-        if (im != null) {
-            Image pressedImage = AquaImageFactory.getProcessedImage(im, AquaImageFactory.DARKEN_FOR_PRESSED);
+        // The processed image is cached, unless the icon may paint differently each time
+        Image pressedImage = AquaImageFactory.getProcessedImage(ic, AquaImageFactory.DARKEN_FOR_PRESSED);
+        if (pressedImage != null) {
             return new ImageIcon(pressedImage);
         } else {
             return ic;
@@ -108,9 +108,9 @@ public class AquaIcon {
     }
 
     public static @NotNull Icon createDisabledLightIcon(@NotNull Icon ic) {
-        Image im = getImageForIcon(ic);
-        if (im != null) {
-            Image disabledImage = AquaImageFactory.getProcessedImage(im, AquaImageFactory.LIGHTEN_FOR_DISABLED);
+        // The processed image is cached, unless the icon may paint differently each time
+        Image disabledImage = AquaImageFactory.getProcessedImage(ic, AquaImageFactory.LIGHTEN_FOR_DISABLED);
+        if (disabledImage != null) {
             return new ImageIcon(disabledImage);
         } else {
             return ic;
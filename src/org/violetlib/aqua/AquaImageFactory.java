@@ -41,6 +41,9 @@ import java.awt.image.RGBImageFilter;
 import java.io.File;
 import java.net.URL;
 import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 import javax.swing.*;
@@ -401,6 +404,13 @@ public class AquaImageFactory {
     /*
      * A "paintable" which holds nine images, which represent a sliced up initial
      * image that can be stretched from its middles.
+     *
+     * Optionally, the slices can be composited into a single image for each size that is painted repeatedly. Compositing
+     * is disabled by default; it is enabled by specifying a composite cache size. It suits controls that are painted
+     * repeatedly at a few small sizes, not borders that are painted at the size of a window. The composited images are
+     * kept in a small cache, which is limited by the number of images and by the number of pixels. A size is composited
+     * when it is painted for the second time, so that sizes painted only once are painted from the slices. Large sizes
+     * are always painted from the slices.
      */
     public static class SlicedImageControl {
         protected final BufferedImage NW, N, NE;
@@ -412,6 +422,17 @@ public class AquaImageFactory {
         protected final int totalWidth, totalHeight;
         protected final int centerColWidth, centerRowHeight;
 
+        private int compositeCacheSize;
+        private @Nullable LinkedHashMap<CompositeKey,BufferedImage> composites;
+        private @Nullable LinkedHashMap<CompositeKey,CompositeKey> candidates;
+        private int compositePixelCount;
+
+        // The maximum number of pixels in a composited image. Larger sizes are painted from the slices.
+        private static final int MAX_COMPOSITE_PIXELS = 128 * 1024;
+
+        // The maximum number of pixels in the composited images retained by one control.
+        private static final int MAX_CACHED_COMPOSITE_PIXELS = 4 * MAX_COMPOSITE_PIXELS;
+
         public SlicedImageControl(Image img, int westCut, int eastCut, int northCut, int southCut) {
             this(img, westCut, eastCut, northCut, southCut, true);
         }
@@ -447,6 +468,17 @@ public class AquaImageFactory {
             SE = createSlice(img, totalWidth - metrics.eCut, totalHeight - metrics.sCut, metrics.eCut, metrics.sCut);
         }
 
+        /**
+         * Specify the number of composited images to retain. The default is zero.
+         * @param size The maximum number of composited images, or zero to always paint from the slices.
+         */
+        public void setCompositeCacheSize(int size) {
+            compositeCacheSize = Math.max(0, size);
+            composites = null;
+            candidates = null;
+            compositePixelCount = 0;
+        }
+
         static BufferedImage createSlice(Image img, int x, int y, int w, int h) {
             if (w == 0 || h == 0) return null;
 
@@ -459,6 +491,14 @@ public class AquaImageFactory {
         }
 
         public void paint(Graphics g, int x, int y, int w, int h) {
+            if (compositeCacheSize > 0 && w > 0 && h > 0) {
+                BufferedImage im = getComposite(g, w, h);
+                if (im != null) {
+                    g.drawImage(im, x, y, w, h, null);
+                    return;
+                }
+            }
+
             g.translate(x, y);
 
             if (w < totalWidth || h < totalHeight) {
@@ -470,6 +510,91 @@ public class AquaImageFactory {
             g.translate(-x, -y);
         }
 
+        /**
+         * Return the composited image for the specified size, creating it if the size has been requested before.
+         * @return the composited image, or null if the size should be painted from the slices.
+         */
+        private @Nullable BufferedImage getComposite(@NotNull Graphics g, int w, int h) {
+            int scale = RenderedImageCache.getScale(g);
+            if (scale == 0) {
+                return null;
+            }
+
+            long pixelCount = (long) w * h * scale * scale;
+            if (pixelCount > MAX_COMPOSITE_PIXELS) {
+                return null;
+            }
+
+            if (composites == null) {
+                int capacity = compositeCacheSize;
+                composites = new LinkedHashMap<>(16, 0.75f, true);
+                compositePixelCount = 0;
+                candidates = new LinkedHashMap<CompositeKey,CompositeKey>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<CompositeKey,CompositeKey> eldest) {
+                        return size() > 2 * capacity;
+                    }
+                };
+            }
+
+            CompositeKey key = new CompositeKey(w, h, scale);
+            BufferedImage im = composites.get(key);
+            if (im == null) {
+                if (candidates.remove(key) == null) {
+                    // first request for this size
+                    candidates.put(key, key);
+                    return null;
+                }
+                im = new BufferedImage(w * scale, h * scale, BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D ig = im.createGraphics();
+                ig.scale(scale, scale);
+                if (w < totalWidth || h < totalHeight) {
+                    paintCompressed(ig, w, h);
+                } else {
+                    paintStretchedMiddles(ig, w, h);
+                }
+                ig.dispose();
+                composites.put(key, im);
+                compositePixelCount += (int) pixelCount;
+                Iterator<BufferedImage> it = composites.values().iterator();
+                while ((composites.size() > compositeCacheSize || compositePixelCount > MAX_CACHED_COMPOSITE_PIXELS)
+                        && it.hasNext()) {
+                    BufferedImage eldest = it.next();
+                    if (eldest == im) {
+                        break;
+                    }
+                    it.remove();
+                    compositePixelCount -= eldest.getWidth() * eldest.getHeight();
+                }
+            }
+            return im;
+        }
+
+        private static class CompositeKey {
+            final int width;
+            final int height;
+            final int scale;
+
+            CompositeKey(int width, int height, int scale) {
+                this.width = width;
+                this.height = height;
+                this.scale = scale;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof CompositeKey)) return false;
+                CompositeKey that = (CompositeKey) o;
+                return width == that.width && height == that.height && scale == that.scale;
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(width, height, scale);
+            }
+        }
+
         void paintStretchedMiddles(Graphics g, int w, int h) {
             int baseX = metrics.stretchH ? 0 : ((w / 2) - (totalWidth / 2));
             int baseY = metrics.stretchV ? 0 : ((h / 2) - (totalHeight / 2));
@@ -576,8 +701,7 @@ public class AquaImageFactory {
         }
         if (operator instanceof LightenOperator) {
             int percent = ((LightenOperator) operator).percent;
-            GrayFilter filter = new GrayFilter(true, percent);
-            return AquaMultiResolutionImage.apply(source, filter);
+            return applyFilter(source, new LightenFilter(percent));
         }
         if (operator == INVERT_FOR_DARK_MODE) {
             if (isTemplateImage(source)) {
@@ -588,6 +712,27 @@ public class AquaImageFactory {
         return source;
     }
 
+    /**
+     * A bulk equivalent of {@code GrayFilter} with {@code brighter} set to true.
+     */
+    private static class LightenFilter extends BulkImageFilter {
+        private final int percent;
+
+        public LightenFilter(int percent) {
+            this.percent = percent;
+        }
+
+        @Override
+        protected int filter(int rgb) {
+            // Use NTSC conversion formula.
+            int gray = (int) ((0.30 * ((rgb >> 16) & 0xff) + 0.59 * ((rgb >> 8) & 0xff) + 0.11 * (rgb & 0xff)) / 3);
+            gray = (255 - ((255 - gray) * (100 - percent) / 100));
+            if (gray < 0) gray = 0;
+            if (gray > 255) gray = 255;
+            return (rgb & 0xff000000) | (gray << 16) | (gray << 8) | (gray << 0);
+        }
+    }
+
     private static class GenerateSelectedDarkFilter extends IconImageFilter {
         @Override
         int getGreyFor(int gray) {
@@ -595,13 +740,10 @@ public class AquaImageFactory {
         }
     }
 
-    private static class GeneratePressedDarkFilter extends RGBImageFilter {
-        public GeneratePressedDarkFilter() {
-            canFilterIndexColorModel = true;
-        }
+    private static class GeneratePressedDarkFilter extends BulkImageFilter {
 
         @Override
-        public int filterRGB(int x, int y, int rgb) {
+        protected int filter(int rgb) {
             int red = (rgb >> 16) & 0xff;
             int green = (rgb >> 8) & 0xff;
             int blue = rgb & 0xff;
@@ -609,7 +751,7 @@ public class AquaImageFactory {
             return (rgb & 0xff000000) | (transform(red) << 16) | (transform(green) << 8) | (transform(blue) << 0);
         }
 
-        protected int transform(int c) {
+        private static int transform(int c) {
             int result = (c * 40) / 100;
             if (result < 0) result = 0;
             if (result > 255) result = 255;
@@ -617,13 +759,10 @@ public class AquaImageFactory {
         }
     }
 
-    private static class GenerateDisabledLightFilter extends RGBImageFilter {
-        public GenerateDisabledLightFilter() {
-            canFilterIndexColorModel = true;
-        }
+    private static class GenerateDisabledLightFilter extends BulkImageFilter {
 
         @Override
-        public int filterRGB(int x, int y, int rgb) {
+        protected int filter(int rgb) {
             int red = (rgb >> 16) & 0xff;
             int green = (rgb >> 8) & 0xff;
             int blue = rgb & 0xff;
@@ -631,7 +770,7 @@ public class AquaImageFactory {
             return (rgb & 0xff000000) | (transform(red) << 16) | (transform(green) << 8) | (transform(blue) << 0);
         }
 
-        protected int transform(int c) {
+        private static int transform(int c) {
             int result = 255 - ((255 - c) * 50) / 100;
             if (result < 0) result = 0;
             if (result > 255) result = 255;
@@ -639,13 +778,10 @@ public class AquaImageFactory {
         }
     }
 
-    private abstract static class IconImageFilter extends RGBImageFilter {
-        IconImageFilter() {
-            canFilterIndexColorModel = true;
-        }
+    private abstract static class IconImageFilter extends BulkImageFilter {
 
         @Override
-        public final int filterRGB(int x, int y, int rgb) {
+        protected int filter(int rgb) {
             int red = (rgb >> 16) & 0xff;
             int green = (rgb >> 8) & 0xff;
             int blue = rgb & 0xff;
@@ -775,6 +911,9 @@ public class AquaImageFactory {
     }
 
     public static Image applyFilter(Image image, ImageFilter filter) {
+        if (filter instanceof BulkImageFilter) {
+            return BulkImageFilter.apply(image, (BulkImageFilter) filter);
+        }
         return JavaSupport.applyFilter(image, filter);
     }
 
@@ -817,14 +956,10 @@ public class AquaImageFactory {
         }
     }
 
-    private static class GenerateTemplateFilter extends RGBImageFilter {
-
-        public GenerateTemplateFilter() {
-            canFilterIndexColorModel = true;
-        }
+    private static class GenerateTemplateFilter extends BulkImageFilter {
 
         @Override
-        public int filterRGB(int x, int y, int rgb) {
+        protected int filter(int rgb) {
             int alpha = rgb >> 24 & 0xff;
             int color = rgb & 0xffffff;
             if (color > 0) {
@@ -835,13 +970,10 @@ public class AquaImageFactory {
         }
     }
 
-    private static class InvertImageForDarkModeFilter extends RGBImageFilter {
+    private static class InvertImageForDarkModeFilter extends BulkImageFilter {
 
-        public InvertImageForDarkModeFilter() {
-            canFilterIndexColorModel = true;
-        }
-
-        public int filterRGB(int x, int y, int rgb) {
+        @Override
+        protected int filter(int rgb) {
             // Use NTSC conversion formula.
             int gray = (int)((0.30 * ((rgb >> 16) & 0xff) + 0.59 * ((rgb >> 8) & 0xff) + 0.11 * (rgb & 0xff)) / 3);
             gray = (int) ((255 - gray) * 0.7);
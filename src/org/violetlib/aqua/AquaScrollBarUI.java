@@ -47,7 +47,6 @@ import javax.swing.plaf.ScrollBarUI;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.violetlib.jnr.LayoutInfo;
-import org.violetlib.jnr.Painter;
 import org.violetlib.jnr.aqua.*;
 import org.violetlib.jnr.aqua.AquaUIPainter.*;
 
@@ -206,10 +205,7 @@ public class AquaScrollBarUI extends ScrollBarUI implements AquaComponentUI {
             }
         }
 
-        AquaUtils.configure(painter, c, width, height);
-        Painter p = painter.getPainter(bg);
-
-        p.paint(g, x, y);
+        RenderedImageCache.paint(g, painter, c, bg, x, y, width, height);
 
         if (gg != null) {
             gg.dispose();
@@ -50,7 +50,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.violetlib.geom.ExpandableOutline;
 import org.violetlib.jnr.LayoutInfo;
-import org.violetlib.jnr.Painter;
 import org.violetlib.jnr.SliderPainter;
 import org.violetlib.jnr.aqua.AquaUIPainter;
 import org.violetlib.jnr.aqua.AquaUIPainter.Size;
@@ -294,11 +293,11 @@ public class AquaSliderUI extends BasicSliderUI
             }
         }
 
-        Painter p = getConfiguredPainter();
+        SliderConfiguration sg = getConfiguration();
         if (isCircular) {
-            p.paint(g, 0, 0);
+            RenderedImageCache.paint(g, painter, slider, sg, 0, 0, trackRect.width, trackRect.height);
         } else {
-            p.paint(g, trackRect.x, trackRect.y);
+            RenderedImageCache.paint(g, painter, slider, sg, trackRect.x, trackRect.y, trackRect.width, trackRect.height);
         }
 
         if (slider.getPaintLabels() && clip.intersects(labelRect)) {
@@ -544,9 +544,8 @@ public class AquaSpinnerUI extends SpinnerUI implements AquaComponentUI,
 
             Rectangle bounds = getBounds();
             AppearanceManager.ensureAppearance(spinner);
-            AquaUtils.configure(painter, spinner, bounds.width, bounds.height);
             Configuration cg = getConfiguration();
-            painter.getPainter(cg).paint(g, 0, 0);
+            RenderedImageCache.paint(g, painter, spinner, cg, 0, 0, bounds.width, bounds.height);
         }
 
         protected Configuration getConfiguration() {
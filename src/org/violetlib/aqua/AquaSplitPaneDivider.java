@@ -141,9 +141,8 @@ public class AquaSplitPaneDivider extends BasicSplitPaneDivider {
             DividerWidget w = ui.getWidget();
             State state = getState();
             AquaUIPainter.Orientation orientation = isVerticalDivider ? AquaUIPainter.Orientation.VERTICAL : AquaUIPainter.Orientation.HORIZONTAL;
-            AquaUtils.configure(painter, splitPane, size.width, size.height);
             SplitPaneDividerConfiguration dg = new SplitPaneDividerConfiguration(w, state, orientation, 0);
-            painter.getPainter(dg).paint(g, x, y);
+            RenderedImageCache.paint(g, painter, splitPane, dg, x, y, size.width, size.height);
         } else {
             AquaUtils.fillRect(g, c, x, y, size.width, size.height);
         }
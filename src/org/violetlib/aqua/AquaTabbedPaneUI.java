@@ -53,7 +53,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.violetlib.jnr.Insetter;
 import org.violetlib.jnr.LayoutInfo;
-import org.violetlib.jnr.Painter;
 import org.violetlib.jnr.aqua.AquaUIPainter;
 import org.violetlib.jnr.aqua.AquaUIPainter.*;
 import org.violetlib.jnr.aqua.SegmentedButtonConfiguration;
@@ -517,9 +516,7 @@ public class AquaTabbedPaneUI extends AquaTabbedPaneCopyFromBasicUI
     protected void paintTabBackground(@NotNull Graphics g,
                                       @NotNull Rectangle tabRect,
                                       @NotNull SegmentedButtonConfiguration bg) {
-        AquaUtils.configure(painter, tabPane, tabRect.width, tabRect.height);
-        Painter p = painter.getPainter(bg);
-        p.paint(g, tabRect.x, tabRect.y);
+        RenderedImageCache.paint(g, painter, tabPane, bg, tabRect.x, tabRect.y, tabRect.width, tabRect.height);
     }
 
     protected @NotNull SegmentedButtonConfiguration getConfiguration(boolean isSelected,
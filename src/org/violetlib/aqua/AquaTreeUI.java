@@ -1513,8 +1513,7 @@ public class AquaTreeUI extends BasicTreeUI implements SelectionRepaintable, Aqu
             }
             int x = center.x - width / 2;
             int y = center.y - height / 2;
-            AquaUtils.configure(painter, tree, width, height);
-            painter.getPainter(tg).paint(g, x, y);
+            RenderedImageCache.paint(g, painter, tree, tg, x, y, width, height);
         }
     }
 
@@ -945,6 +945,7 @@ final public class AquaUtils {
             BufferedImage i = new BufferedImage(templateWidth, templateHeight, BufferedImage.TYPE_INT_ARGB_PRE);
             super.paintBorder(null, i.getGraphics(), 0, 0, templateWidth, templateHeight);
 //            debugFrame("slices", i);
+            // The border is hollow and is usually painted at the size of a frame, so it is not composited
             slices = new SlicedImageControl(i, leftCut, topCut, rightCut, bottomCut, false);
         }
 
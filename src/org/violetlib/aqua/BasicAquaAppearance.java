@@ -63,6 +63,16 @@ public class BasicAquaAppearance implements VAppearance {
         return colors.get(colorName);
     }
 
+    /**
+     * Return the color whose name has the specified identifier.
+     * @param id The color name identifier (see {@link ColorNameRegistry}), or -1.
+     * @return the color, as a ColorUIResource, or null if the color name not defined in this appearance.
+     */
+
+    public @Nullable Color getColor(int id) {
+        return colors.get(id);
+    }
+
     public boolean isBasedOn(@NotNull VAppearance va) {
         return va == appearance;
     }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RGBImageFilter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A pixel filter that can be applied directly to the pixel data of buffered images. Pixels are processed in bulk
+ * from an array, avoiding the image producer pipeline and the need to wait for the filtered image to be produced.
+ * <p>
+ * A bulk filter is also an RGBImageFilter. Images that are not buffered images are filtered using the image
+ * producer pipeline. Both paths produce the same pixels, because both apply {@link #filter(int)} to each pixel.
+ * <p>
+ * The pixels of the source image are copied, not accessed in place, so that filtering does not prevent the source
+ * image from being accelerated.
+ * <p>
+ * Pixels are represented as non-premultiplied ARGB values, as in {@link RGBImageFilter}. The filtered image has type
+ * {@code TYPE_INT_ARGB}, so that the filtered pixel values are stored exactly.
+ */
+
+public abstract class BulkImageFilter extends RGBImageFilter {
+
+    // Images with at least this many pixels are filtered in parallel
+    private static final int PARALLEL_THRESHOLD = 128 * 128;
+
+    protected BulkImageFilter() {
+        canFilterIndexColorModel = true;
+    }
+
+    /**
+     * Filter one pixel.
+     * @param rgb The pixel, as a non-premultiplied ARGB value.
+     * @return the filtered pixel, as a non-premultiplied ARGB value.
+     */
+    protected abstract int filter(int rgb);
+
+    @Override
+    public final int filterRGB(int x, int y, int rgb) {
+        return filter(rgb);
+    }
+
+    /**
+     * Filter a range of pixels.
+     * @param source The source pixels.
+     * @param destination The array to receive the filtered pixels. May be the same as {@code source}.
+     * @param start The index of the first pixel to filter.
+     * @param end The index after the last pixel to filter.
+     */
+    public final void filterPixels(int[] source, int[] destination, int start, int end) {
+        for (int i = start; i < end; i++) {
+            destination[i] = filter(source[i]);
+        }
+    }
+
+    /**
+     * Create an image by applying a bulk filter. Supports multi-resolution images. All resolution variants of a
+     * VAqua multi-resolution image are filtered by this call.
+     */
+    public static @NotNull Image apply(@NotNull Image image, @NotNull BulkImageFilter filter) {
+        if (image instanceof BufferedImage) {
+            return filter((BufferedImage) image, filter);
+        }
+        Function<Image,Image> mapper = rv -> rv instanceof BufferedImage
+                ? filter((BufferedImage) rv, filter)
+                : JavaSupport.applyFilter(rv, filter);
+        return JavaSupport.applyMapper(image, mapper);
+    }
+
+    /**
+     * Create a buffered image by applying a bulk filter to a buffered image.
+     */
+    public static @NotNull BufferedImage filter(@NotNull BufferedImage source, @NotNull BulkImageFilter filter) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] data = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        getPixels(source, data);
+        int count = width * height;
+        if (count >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new FilterTask(filter, data, data, 0, count));
+        } else {
+            filter.filterPixels(data, data, 0, count);
+        }
+        return result;
+    }
+
+    /**
+     * Copy the non-premultiplied ARGB pixels of an image. The pixels of a {@code TYPE_INT_ARGB} image are copied
+     * as data elements. Other images are converted by their color model, as the image producer pipeline would do.
+     * @param image The image.
+     * @param buffer An array of the appropriate size to receive the pixels.
+     */
+    private static void getPixels(@NotNull BufferedImage image, int[] buffer) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, 0, width, height, buffer);
+        } else {
+            image.getRGB(0, 0, width, height, buffer, 0, width);
+        }
+    }
+
+    private static class FilterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Minimum number of pixels processed by one task
+        private static final int CHUNK_SIZE = 16 * 1024;
+
+        private final @NotNull BulkImageFilter filter;
+        private final int[] source;
+        private final int[] destination;
+        private final int start;
+        private final int end;
+
+        public FilterTask(@NotNull BulkImageFilter filter, int[] source, int[] destination, int start, int end) {
+            this.filter = filter;
+            this.source = source;
+            this.destination = destination;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK_SIZE) {
+                filter.filterPixels(source, destination, start, end);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new FilterTask(filter, source, destination, start, middle),
+                        new FilterTask(filter, source, destination, middle, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Assigns integer identifiers to color names. The identifier of a color name is the same in all appearances. Colors
+ * can then be stored in arrays indexed by identifier, so that colors can be looked up without hashing. The identifier
+ * of a color name combined with an effect name is also cached, so that it can be obtained without creating a string.
+ * <p>
+ * Identifiers are assigned in increasing order starting with zero and are never reused.
+ */
+
+public class ColorNameRegistry {
+
+    private static final @NotNull ConcurrentHashMap<String,Integer> identifiers = new ConcurrentHashMap<>();
+    private static volatile @NotNull String[] names = new String[256];
+    private static int count;
+
+    // For each effect, the identifier (plus one) of the effect variant of a color name, indexed by the color name
+    // identifier. Zero means not yet known.
+    private static final @NotNull int[][] effectIdentifiers = new int[EffectName.EFFECT_COUNT][];
+
+    static {
+        for (int i = 0; i < EffectName.EFFECT_COUNT; i++) {
+            effectIdentifiers[i] = new int[0];
+        }
+    }
+
+    private ColorNameRegistry() {
+    }
+
+    /**
+     * Return the identifier for the specified color name, assigning one if necessary.
+     */
+
+    public static int getID(@NotNull String name) {
+        Integer id = identifiers.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ColorNameRegistry.class) {
+            id = identifiers.get(name);
+            if (id != null) {
+                return id;
+            }
+            int n = count++;
+            String[] ns = names;
+            if (n >= ns.length) {
+                ns = Arrays.copyOf(ns, ns.length * 2);
+            }
+            ns[n] = name;
+            names = ns;
+            identifiers.put(name, n);
+            return n;
+        }
+    }
+
+    /**
+     * Return the identifier for the specified color name, if one has been assigned.
+     * @return the identifier, or -1 if none has been assigned.
+     */
+
+    public static int findID(@NotNull String name) {
+        Integer id = identifiers.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Return the color name with the specified identifier.
+     */
+
+    public static @Nullable String getName(int id) {
+        String[] ns = names;
+        return id >= 0 && id < ns.length ? ns[id] : null;
+    }
+
+    /**
+     * Return the number of identifiers that have been assigned. All identifiers are less than this value.
+     */
+
+    public static int getCount() {
+        synchronized (ColorNameRegistry.class) {
+            return count;
+        }
+    }
+
+    /**
+     * Return the identifier of the color name that names the variant of a color for the specified effect, assigning
+     * one if necessary.
+     * @param id The identifier of the basic color name.
+     * @param effect The effect, which must not be {@code EFFECT_NONE}.
+     * @return the identifier of the name formed from the basic color name and the effect name.
+     */
+
+    public static int getEffectID(int id, @NotNull EffectName effect) {
+        int index = effect.getIndex();
+        int[] ids = effectIdentifiers[index];
+        if (id < ids.length) {
+            int result = ids[id];
+            if (result > 0) {
+                return result - 1;
+            }
+        }
+
+        String name = getName(id);
+        if (name == null) {
+            throw new IllegalArgumentException("Undefined color name identifier: " + id);
+        }
+        int result = getID(name + "_" + effect);
+        synchronized (ColorNameRegistry.class) {
+            ids = effectIdentifiers[index];
+            if (id >= ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(id + 1, names.length));
+            }
+            ids[id] = result + 1;
+            effectIdentifiers[index] = ids;
+        }
+        return result;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2020 Alan Snyder.
+ * Copyright (c) 2020-2026 Alan Snyder.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
@@ -16,20 +16,48 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * A collection of color definitions.
+ * A collection of color definitions. Colors may be looked up by name or by the identifier assigned to the name by
+ * {@link ColorNameRegistry}.
  */
 
 public class Colors {
     private final @NotNull Map<String,Color> colors;
+    private final @NotNull Color[] table;
 
     public Colors(@NotNull Map<String,Color> colors) {
         this.colors = colors;
+
+        int[] ids = new int[colors.size()];
+        Color[] values = new Color[colors.size()];
+        int limit = 0;
+        int index = 0;
+        for (Map.Entry<String,Color> e : colors.entrySet()) {
+            int id = ColorNameRegistry.getID(e.getKey());
+            ids[index] = id;
+            values[index] = e.getValue();
+            limit = Math.max(limit, id + 1);
+            index++;
+        }
+        this.table = new Color[limit];
+        for (int i = 0; i < index; i++) {
+            table[ids[i]] = values[i];
+        }
     }
 
     public @Nullable Color get(@NotNull String name) {
         return colors.get(name);
     }
 
+    /**
+     * Return the color whose name has the specified identifier.
+     * @param id The color name identifier, or -1.
+     * @return the color, or null if the color name is not defined in this collection.
+     */
+
+    public @Nullable Color get(int id) {
+        return id >= 0 && id < table.length ? table[id] : null;
+    }
+
     public @NotNull Set<String> getColorNames() {
         return colors.keySet();
     }
@@ -16,21 +16,32 @@ import org.jetbrains.annotations.NotNull;
 
 public class EffectName {
     private final @NotNull String name;
+    private final int index;
 
-    public static final @NotNull EffectName EFFECT_NONE = new EffectName("none");
-    public static final @NotNull EffectName EFFECT_PRESSED = new EffectName("pressed");
-    public static final @NotNull EffectName EFFECT_DEEP_PRESSED = new EffectName("deepPressed");
-    public static final @NotNull EffectName EFFECT_DISABLED = new EffectName("disabled");
-    public static final @NotNull EffectName EFFECT_ROLLOVER = new EffectName("rollover");
+    public static final int EFFECT_COUNT = 5;
 
-    private EffectName(@NotNull String name) {
+    public static final @NotNull EffectName EFFECT_NONE = new EffectName("none", 0);
+    public static final @NotNull EffectName EFFECT_PRESSED = new EffectName("pressed", 1);
+    public static final @NotNull EffectName EFFECT_DEEP_PRESSED = new EffectName("deepPressed", 2);
+    public static final @NotNull EffectName EFFECT_DISABLED = new EffectName("disabled", 3);
+    public static final @NotNull EffectName EFFECT_ROLLOVER = new EffectName("rollover", 4);
+
+    private EffectName(@NotNull String name, int index) {
         this.name = name;
+        this.index = index;
     }
 
     public @NotNull String getName() {
         return name;
     }
 
+    /**
+     * Return a small integer that identifies this effect, in the range 0 to {@link #EFFECT_COUNT} - 1.
+     */
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public @NotNull String toString() {
         return name;
@@ -10,16 +10,27 @@ package org.violetlib.aqua;
 
 import java.awt.*;
 //import java.beans.BeanProperty;
+import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.tree.*;
 
 /**
  * This class is a copy of VariableHeightLayoutCache extended with the ability to add vertical spacing between rows.
+ * <p>
+ * Unlike VariableHeightLayoutCache, the Y origins of the rows are not stored in the nodes. The heights of the visible
+ * rows and the spacing above them are maintained in a {@link RowGeometryIndex}, so that Y origins, row lookup by
+ * location, and the row of a node are obtained in logarithmic time, and expanding or collapsing a node does not
+ * update the rows that follow it. The spacing above a row is assumed to depend upon the node displayed in the row,
+ * not upon its position. It is obtained when the node becomes visible and when node sizes are updated.
+ * <p>
+ * The storage is also more compact than that of VariableHeightLayoutCache, and it is not synchronized, as the layout
+ * cache is used only on the event dispatch thread. A visible node is itself the entry for its row in the row geometry
+ * index, so there is no separate list of visible nodes. Nodes hold their children in arrays instead of inheriting a
+ * child Vector from DefaultMutableTreeNode, and the mapping from paths to nodes is an open addressing hash table
+ * whose entries are the nodes themselves.
  */
 
 /*
@@ -66,10 +77,10 @@ import javax.swing.tree.*;
 @SuppressWarnings("serial") // Same-version serialization only
 public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
     /**
-     * The array of nodes that are currently visible, in the order they
-     * are displayed.
+     * The nodes that are currently visible, in the order they are
+     * displayed, along with their heights and the spacing above them.
      */
-    private Vector<Object> visibleNodes;
+    private RowGeometryIndex  rowGeometry;
 
     /**
      * This is set to true if one of the entries has an invalid size.
@@ -92,12 +103,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
     /**
      * Maps from <code>TreePath</code> to a <code>TreeStateNode</code>.
      */
-    private Hashtable<TreePath, TreeStateNode> treePathMapping;
-
-    /**
-     * A stack of stacks.
-     */
-    private Stack<Stack<TreePath>> tempStacks;
+    private PathMapping       treePathMapping;
 
 
     /**
@@ -105,10 +111,9 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
      */
     public ExtendedVariableHeightLayoutCache() {
         super();
-        tempStacks = new Stack<Stack<TreePath>>();
-        visibleNodes = new Vector<Object>();
+        rowGeometry = new RowGeometryIndex();
         boundsBuffer = new Rectangle();
-        treePathMapping = new Hashtable<TreePath, TreeStateNode>();
+        treePathMapping = new PathMapping();
     }
 
     /**
@@ -136,18 +141,16 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
         if(isRootVisible() != rootVisible && root != null) {
             if(rootVisible) {
                 root.updatePreferredSize(0);
-                visibleNodes.insertElementAt(root, 0);
+                insertVisibleNode(0, root);
             }
-            else if(visibleNodes.size() > 0) {
-                visibleNodes.removeElementAt(0);
+            else if(getRowCount() > 0) {
+                removeVisibleNodes(0, 1);
                 if(treeSelectionModel != null)
                     treeSelectionModel.removeSelectionPath
                         (root.getTreePath());
             }
             if(treeSelectionModel != null)
                 treeSelectionModel.resetRowSelection();
-            if(getRowCount() > 0)
-                getNode(0).setYOrigin(0);
             updateYLocationsFrom(0);
             visibleNodesChanged();
         }
@@ -272,7 +275,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
      * @return the number of visible rows
      */
     public int getRowCount() {
-        return visibleNodes.size();
+        return rowGeometry.size();
     }
 
     /**
@@ -379,7 +382,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
     public void invalidateSizes() {
         if(root != null)
             root.deepMarkSizeInvalid();
-        if(!isFixedRowHeight() && visibleNodes.size() > 0) {
+        if(!isFixedRowHeight() && getRowCount() > 0) {
             updateNodeSizes(true);
         }
     }
@@ -433,7 +436,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 changedNode.updatePreferredSize();
                 if(changedNode.hasBeenExpanded() && changedIndexs != null) {
                     for(int index : changedIndexs) {
-                        TreeStateNode changedChildNode = (TreeStateNode)changedNode
+                        TreeStateNode changedChildNode = changedNode
                                     .getChildAt(index);
                         /* Reset the user object. */
                         changedChildNode.setUserObject
@@ -555,7 +558,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                                       changedParentNode.isExpanded()));
                     for(counter = changedIndexs.length - 1;counter >= 0;
                         counter--) {
-                        removedNode = (TreeStateNode)changedParentNode.
+                        removedNode = changedParentNode.
                                 getChildAt(changedIndexs[counter]);
                         if(removedNode.isExpanded()) {
                             removedNode.collapse(false);
@@ -565,7 +568,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                         if(makeInvisible) {
                             removedRow = removedNode.getRow();
                             if(removedRow != -1) {
-                                visibleNodes.removeElementAt(removedRow);
+                                removeVisibleNodes(removedRow, 1);
                             }
                         }
                         changedParentNode.remove(changedIndexs[counter]);
@@ -587,11 +590,6 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                                (changedParentNode.getChildCount() == 0 &&
                                 changedParentNode.isVisible()))) {
                         if(changedParentNode == root) {
-                            /* It is possible for first row to have been
-                               removed if the root isn't visible, in which
-                               case ylocations will be off! */
-                            if(getRowCount() > 0)
-                                getNode(0).setYOrigin(0);
                             updateYLocationsFrom(0);
                         }
                         else
@@ -649,16 +647,16 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 wasExpanded = changedNode.isExpanded();
                 wasVisible = (changedNode.getRow() != -1);
                 /* Remove the current node and recreate a new one. */
-                parent = (TreeStateNode)changedNode.getParent();
+                parent = changedNode.getParent();
                 nodeIndex = parent.getIndex(changedNode);
                 if(wasVisible && wasExpanded) {
                     changedNode.collapse(false);
                 }
                 if(wasVisible)
-                    visibleNodes.removeElement(changedNode);
+                    removeVisibleNodes(changedNode.getRow(), 1);
                 changedNode.removeFromParent();
                 createNodeAt(parent, nodeIndex);
-                newNode = (TreeStateNode)parent.getChildAt(nodeIndex);
+                newNode = parent.getChildAt(nodeIndex);
                 if(wasVisible && wasExpanded)
                     newNode.expand(false);
                 newIndex = newNode.getRow();
@@ -687,7 +685,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
      * Adds a mapping for node.
      */
     private void addMapping(TreeStateNode node) {
-        treePathMapping.put(node.getTreePath(), node);
+        treePathMapping.put(node);
     }
 
     /**
@@ -733,22 +731,19 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
             root.path = new TreePath(rootObject);
             addMapping(root);
             root.updatePreferredSize(0);
-            visibleNodes.removeAllElements();
+            removeAllVisibleNodes();
             if (isRootVisible())
-                visibleNodes.addElement(root);
+                insertVisibleNode(0, root);
             if(!root.isExpanded())
                 root.expand();
             else {
-                Enumeration<?> cursor = root.children();
-                while(cursor.hasMoreElements()) {
-                    visibleNodes.addElement(cursor.nextElement());
-                }
-                if(!isFixedRowHeight())
-                    updateYLocationsFrom(0);
+                List<TreeStateNode> children = new ArrayList<TreeStateNode>();
+                root.addVisibleDescendants(children);
+                insertVisibleNodes(getRowCount(), children);
             }
         }
         else {
-            visibleNodes.removeAllElements();
+            removeAllVisibleNodes();
             root = null;
         }
         if(clearSelection && treeSelectionModel != null) {
@@ -794,11 +789,11 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
             else {
                 TreeStateNode          previousNode;
 
-                previousNode = (TreeStateNode)parent.
+                previousNode = parent.
                     getChildAt(childIndex - 1);
                 newRow = previousNode.getLastVisibleNode().getRow() + 1;
             }
-            visibleNodes.insertElementAt(newChildNode, newRow);
+            insertVisibleNode(newRow, newChildNode);
         }
         return newChildNode;
     }
@@ -821,51 +816,42 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 return node;
             }
 
-            // Check all the parent paths, until a match is found.
-            Stack<TreePath> paths;
+            // Check all the parent paths, until a match is found. The
+            // number of path components below the match is counted, rather
+            // than saving the paths, so that this method can be reentered
+            // (loading children may call back) without allocating.
+            TreePath        parentPath = path.getParentPath();
+            int             depth = 1;
 
-            if(tempStacks.size() == 0) {
-                paths = new Stack<TreePath>();
-            }
-            else {
-                paths = tempStacks.pop();
-            }
-
-            try {
-                paths.push(path);
-                path = path.getParentPath();
-                node = null;
-                while(path != null) {
-                    node = getMapping(path);
-                    if(node != null) {
-                        // Found a match, create entries for all paths in
-                        // paths.
-                        while(node != null && paths.size() > 0) {
-                            path = paths.pop();
-                            node.getLoadedChildren(shouldCreate);
-
-                            int            childIndex = treeModel.
-                                      getIndexOfChild(node.getUserObject(),
-                                                  path.getLastPathComponent());
-
-                            if(childIndex == -1 ||
-                               childIndex >= node.getChildCount() ||
-                               (onlyIfVisible && !node.isVisible())) {
-                                node = null;
-                            }
-                            else
-                                node = (TreeStateNode)node.getChildAt
-                                               (childIndex);
+            while(parentPath != null) {
+                node = getMapping(parentPath);
+                if(node != null) {
+                    // Found a match, create entries for all the paths
+                    // below it.
+                    while(node != null && depth > 0) {
+                        TreePath       childPath = path;
+
+                        depth--;
+                        for(int counter = 0; counter < depth; counter++)
+                            childPath = childPath.getParentPath();
+                        node.loadChildren(shouldCreate);
+
+                        int            childIndex = treeModel.
+                                  getIndexOfChild(node.getUserObject(),
+                                              childPath.getLastPathComponent());
+
+                        if(childIndex == -1 ||
+                           childIndex >= node.getChildCount() ||
+                           (onlyIfVisible && !node.isVisible())) {
+                            node = null;
                         }
-                        return node;
+                        else
+                            node = node.getChildAt(childIndex);
                     }
-                    paths.push(path);
-                    path = path.getParentPath();
+                    return node;
                 }
-            }
-            finally {
-                paths.removeAllElements();
-                tempStacks.push(paths);
+                parentPath = parentPath.getParentPath();
+                depth++;
             }
             // If we get here it means they share a different root!
             // We could throw an exception...
@@ -875,25 +861,68 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
 
     /**
       * Updates the y locations of all of the visible nodes after
-      * location.
+      * location. The y locations are derived from the row geometry, so
+      * only the height of the node at location needs to be updated.
       */
     private void updateYLocationsFrom(int location) {
-        if(location >= 0 && location < getRowCount()) {
-            int                    counter, maxCounter, newYOrigin;
-            TreeStateNode          aNode;
-
-            aNode = getNode(location);
-            newYOrigin = aNode.getYOrigin() + aNode.getPreferredHeight() + getRowSpacingAbove(location + 1);
-            for(counter = location + 1, maxCounter = visibleNodes.size();
-                counter < maxCounter;counter++) {
-                aNode = (TreeStateNode)visibleNodes.
-                    elementAt(counter);
-                aNode.setYOrigin(newYOrigin);
-                newYOrigin += aNode.getPreferredHeight() + getRowSpacingAbove(counter + 1);
+        if(location >= 0 && location < getRowCount() && !isFixedRowHeight()) {
+            TreeStateNode          aNode = getNode(location);
+
+            rowGeometry.setHeight(aNode, aNode.getPreferredHeight());
+        }
+    }
+
+    /**
+     * Inserts a node into the visible nodes at row.
+     */
+    private void insertVisibleNode(int row, TreeStateNode node) {
+        List<TreeStateNode> nodes = new ArrayList<TreeStateNode>(1);
+        nodes.add(node);
+        insertVisibleNodes(row, nodes);
+    }
+
+    /**
+     * Inserts a run of nodes into the visible nodes starting at row, and
+     * obtains their heights and the spacing above them.
+     */
+    private void insertVisibleNodes(int row, List<TreeStateNode> nodes) {
+        int                              count = nodes.size();
+
+        rowGeometry.insert(row, nodes);
+        if(!isFixedRowHeight()) {
+            for(int counter = 0; counter < count; counter++) {
+                updateRowGeometry(nodes.get(counter), row + counter, false);
             }
         }
     }
 
+    /**
+     * Removes a run of rows from the visible nodes.
+     */
+    private void removeVisibleNodes(int row, int count) {
+        rowGeometry.remove(row, count);
+    }
+
+    /**
+     * Removes all the visible nodes.
+     */
+    private void removeAllVisibleNodes() {
+        rowGeometry.clear();
+    }
+
+    /**
+     * Updates the height of the node displayed at row and the spacing above
+     * it in the row geometry. If updateSize is true, or the size of the node
+     * is not valid, the preferred size of the node is updated first.
+     */
+    private void updateRowGeometry(TreeStateNode node, int row,
+                                   boolean updateSize) {
+        if(updateSize || !node.hasValidSize())
+            node.updatePreferredSize(row);
+        rowGeometry.set(node, node.getPreferredHeight(),
+                        getRowSpacingAbove(row));
+    }
+
     /**
       * Resets the y origin of all the visible nodes as well as messaging
       * all the visible nodes to updatePreferredSize().  You should not
@@ -903,17 +932,17 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
       * or just those that don't have a valid size.
       */
     private void updateNodeSizes(boolean updateAll) {
-        int                      aY, counter, maxCounter;
+        int                      counter;
         TreeStateNode            node;
+        boolean                  isFixed = isFixedRowHeight();
 
         updateNodeSizes = false;
-        for(aY = counter = 0, maxCounter = visibleNodes.size();
-            counter < maxCounter; counter++) {
-            node = (TreeStateNode)visibleNodes.elementAt(counter);
-            node.setYOrigin(aY);
-            if(updateAll || !node.hasValidSize())
+        for(counter = 0, node = getFirstNode(); node != null;
+            counter++, node = getNextNode(node)) {
+            if(!isFixed)
+                updateRowGeometry(node, counter, updateAll);
+            else if(updateAll || !node.hasValidSize())
                 node.updatePreferredSize(counter);
-            aY += node.getPreferredHeight() + getRowSpacingAbove(counter + 1);
         }
     }
 
@@ -932,28 +961,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                                         location / getRowHeight()));
         }
 
-        int max = rows, min = 0, mid = 0;
-
-        while(min < max) {
-            mid = (max - min) / 2 + min;
-            TreeStateNode node = (TreeStateNode)visibleNodes.elementAt(mid);
-            int minY = node.getYOrigin();
-            int maxY = minY + node.getPreferredHeight();
-            if(location < minY) {
-                max = mid - 1;
-            }
-            else if(location >= maxY) {
-                min = mid + 1;
-            }
-            else
-                break;
-        }
-        if(min == max) {
-            mid = min;
-            if(mid >= rows)
-                mid = rows - 1;
-        }
-        return mid;
+        return rowGeometry.getIndexAtY(location);
     }
 
     /**
@@ -986,7 +994,23 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
      * Returns the AbstractTreeUI.VisibleNode displayed at the given row
      */
     private TreeStateNode getNode(int row) {
-        return (TreeStateNode)visibleNodes.elementAt(row);
+        return (TreeStateNode)rowGeometry.get(row);
+    }
+
+    /**
+     * Returns the node displayed in the first row, or null if there are
+     * no rows.
+     */
+    private TreeStateNode getFirstNode() {
+        return (TreeStateNode)rowGeometry.first();
+    }
+
+    /**
+     * Returns the node displayed in the row following the row of
+     * <code>node</code>, or null if <code>node</code> is in the last row.
+     */
+    private TreeStateNode getNextNode(TreeStateNode node) {
+        return (TreeStateNode)rowGeometry.next(node);
     }
 
     /**
@@ -995,11 +1019,9 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
     private int getMaxNodeWidth() {
         int                     maxWidth = 0;
         int                     nodeWidth;
-        int                     counter;
         TreeStateNode           node;
 
-        for(counter = getRowCount() - 1;counter >= 0;counter--) {
-            node = this.getNode(counter);
+        for(node = getFirstNode(); node != null; node = getNextNode(node)) {
             nodeWidth = node.getPreferredWidth() + node.getXOrigin();
             if(nodeWidth > maxWidth)
                 maxWidth = nodeWidth;
@@ -1019,19 +1041,26 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
     /**
      * TreeStateNode is used to keep track of each of
      * the nodes that have been expanded. This will also cache the preferred
-     * size of the value it represents.
+     * size of the value it represents. A visible node is the entry for its
+     * row in the row geometry index.
      */
-    private class TreeStateNode extends DefaultMutableTreeNode {
-        /** Preferred size needed to draw the user object. */
+    private class TreeStateNode extends RowGeometryIndex.Entry {
+        /** The parent of this node. */
+        protected TreeStateNode   parent;
+
+        /** The children of this node. Null if there are none. */
+        protected TreeStateNode[] children;
+
+        /** The value this node represents. */
+        protected Object          userObject;
+
+        /** Preferred width needed to draw the user object. The preferred
+         * height is the height of the row geometry entry. */
         protected int             preferredWidth;
-        protected int             preferredHeight;
 
         /** X location that the user object will be drawn at. */
         protected int             xOrigin;
 
-        /** Y location that the user object will be drawn at. */
-        protected int             yOrigin;
-
         /** Is this node currently expanded? */
         protected boolean         expanded;
 
@@ -1043,24 +1072,99 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
 
 
         public TreeStateNode(Object value) {
-            super(value);
+            userObject = value;
         }
 
         //
-        // Overriden DefaultMutableTreeNode methods
+        // Tree structure, as in DefaultMutableTreeNode
         //
 
         /**
-         * Messaged when this node is added somewhere, resets the path
-         * and adds a mapping from path to this node.
+         * Returns the parent of the receiver.
+         */
+        public TreeStateNode getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the number of children of the receiver.
+         */
+        public int getChildCount() {
+            return children != null ? children.length : 0;
+        }
+
+        /**
+         * Returns the child at <code>childIndex</code>.
+         */
+        public TreeStateNode getChildAt(int childIndex) {
+            if(childIndex < 0 || childIndex >= getChildCount())
+                throw new ArrayIndexOutOfBoundsException(childIndex + " >= " + getChildCount());
+            return children[childIndex];
+        }
+
+        /**
+         * Returns the last child of the receiver.
          */
-        public void setParent(MutableTreeNode parent) {
-            super.setParent(parent);
-            if(parent != null) {
-                path = ((TreeStateNode)parent).getTreePath().
-                                       pathByAddingChild(getUserObject());
-                addMapping(this);
+        public TreeStateNode getLastChild() {
+            if(children == null)
+                throw new NoSuchElementException("node has no children");
+            return children[children.length - 1];
+        }
+
+        /**
+         * Returns the index of <code>child</code>, or -1 if it is not a
+         * child of the receiver.
+         */
+        public int getIndex(TreeStateNode child) {
+            for(int counter = getChildCount() - 1; counter >= 0; counter--) {
+                if(children[counter] == child)
+                    return counter;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the number of levels above the receiver.
+         */
+        public int getLevel() {
+            int                  level = 0;
+
+            for(TreeStateNode node = parent; node != null; node = node.parent)
+                level++;
+            return level;
+        }
+
+        /**
+         * Inserts <code>child</code> at <code>childIndex</code>. The
+         * children array is kept exactly full, as children are rarely
+         * inserted once they have been loaded.
+         */
+        public void insert(TreeStateNode child, int childIndex) {
+            int               count = getChildCount();
+
+            if(childIndex < 0 || childIndex > count)
+                throw new ArrayIndexOutOfBoundsException(childIndex + " > " + count);
+
+            TreeStateNode[]   newChildren = new TreeStateNode[count + 1];
+
+            if(count > 0) {
+                System.arraycopy(children, 0, newChildren, 0, childIndex);
+                System.arraycopy(children, childIndex, newChildren,
+                                 childIndex + 1, count - childIndex);
             }
+            children = newChildren;
+            setChildAt(child, childIndex);
+        }
+
+        /**
+         * Sets the child at <code>childIndex</code>, resets the path of the
+         * child and adds a mapping from the path to the child.
+         */
+        private void setChildAt(TreeStateNode child, int childIndex) {
+            children[childIndex] = child;
+            child.parent = this;
+            child.path = path.pathByAddingChild(child.getUserObject());
+            addMapping(child);
         }
 
         /**
@@ -1068,20 +1172,44 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          * <code>removedFromMapping</code> to remove all the children.
          */
         public void remove(int childIndex) {
-            TreeStateNode     node = (TreeStateNode)getChildAt(childIndex);
+            TreeStateNode     node = getChildAt(childIndex);
+            int               count = children.length - 1;
 
             node.removeFromMapping();
-            super.remove(childIndex);
+            if(count == 0)
+                children = null;
+            else {
+                TreeStateNode[]   newChildren = new TreeStateNode[count];
+
+                System.arraycopy(children, 0, newChildren, 0, childIndex);
+                System.arraycopy(children, childIndex + 1, newChildren,
+                                 childIndex, count - childIndex);
+                children = newChildren;
+            }
+            node.parent = null;
+        }
+
+        /**
+         * Removes the receiver from its parent.
+         */
+        public void removeFromParent() {
+            if(parent != null)
+                parent.remove(parent.getIndex(this));
+        }
+
+        /**
+         * Returns the user object.
+         */
+        public Object getUserObject() {
+            return userObject;
         }
 
         /**
          * Messaged to set the user object. This resets the path.
          */
         public void setUserObject(Object o) {
-            super.setUserObject(o);
+            userObject = o;
             if(path != null) {
-                TreeStateNode      parent = (TreeStateNode)getParent();
-
                 if(parent != null)
                     resetChildrenPaths(parent.getTreePath());
                 else
@@ -1090,16 +1218,35 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
         }
 
         /**
-         * Returns the children of the receiver.
-         * If the receiver is not currently expanded, this will return an
-         * empty enumeration.
+         * Creates the children of the receiver from the model. Their
+         * preferred sizes are not updated.
          */
-        @Override
-        public Enumeration<TreeNode> children() {
-            if (!this.isExpanded()) {
-                return DefaultMutableTreeNode.EMPTY_ENUMERATION;
-            } else {
-                return super.children();
+        private void createChildren() {
+            Object            realNode = getValue();
+            TreeModel         treeModel = getModel();
+            int               count = treeModel.getChildCount(realNode);
+
+            if(count > 0) {
+                children = new TreeStateNode[count];
+                for(int i = 0; i < count; i++) {
+                    setChildAt(createNodeForValue(treeModel.getChild
+                                                  (realNode, i)), i);
+                }
+            }
+        }
+
+        /**
+         * Adds the visible descendants of the receiver to
+         * <code>nodes</code>, in the order they are displayed. The
+         * descendants are visible if the receiver is visible.
+         */
+        public void addVisibleDescendants(List<TreeStateNode> nodes) {
+            if(isExpanded() && children != null) {
+                for(TreeStateNode child : children) {
+
+                    nodes.add(child);
+                    child.addVisibleDescendants(nodes);
+                }
             }
         }
 
@@ -1151,7 +1298,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                     return -1;
                 return getRowHeight() * aRow;
             }
-            return yOrigin;
+            return rowGeometry.getY(this);
         }
 
         /**
@@ -1162,7 +1309,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 return getRowHeight();
             else if(!hasValidSize())
                 updatePreferredSize(getRow());
-            return preferredHeight;
+            return getHeight();
         }
 
         /**
@@ -1178,14 +1325,14 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          * Returns true if this node has a valid size.
          */
         public boolean hasValidSize() {
-            return (preferredHeight != 0);
+            return (getHeight() != 0);
         }
 
         /**
          * Returns the row of the receiver.
          */
         public int getRow() {
-            return visibleNodes.indexOf(this);
+            return rowGeometry.indexOf(this);
         }
 
         /**
@@ -1210,7 +1357,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
             TreeStateNode                node = this;
 
             while(node.isExpanded() && node.getChildCount() > 0)
-                node = (TreeStateNode)node.getLastChild();
+                node = node.getLastChild();
             return node;
         }
 
@@ -1221,7 +1368,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
             if(this == root)
                 return true;
 
-            TreeStateNode        parent = (TreeStateNode)getParent();
+            TreeStateNode        parent = getParent();
 
             return (parent != null && parent.isExpanded() &&
                     parent.isVisible());
@@ -1233,7 +1380,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          */
         public int getModelChildCount() {
             if(hasBeenExpanded)
-                return super.getChildCount();
+                return getChildCount();
             return getModel().getChildCount(getValue());
         }
 
@@ -1249,7 +1396,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
 
                 childCount += maxCounter;
                 for(int counter = 0; counter < maxCounter; counter++)
-                    childCount += ((TreeStateNode)getChildAt(counter)).
+                    childCount += getChildAt(counter).
                                     getVisibleChildCount();
             }
             return childCount;
@@ -1271,7 +1418,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          * <code>expandParentAndReceiver</code> on the superclass.
          */
         public void makeVisible() {
-            TreeStateNode       parent = (TreeStateNode)getParent();
+            TreeStateNode       parent = getParent();
 
             if(parent != null)
                 parent.expandParentAndReceiver();
@@ -1321,22 +1468,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 path = parentPath.pathByAddingChild(getUserObject());
             addMapping(this);
             for(int counter = getChildCount() - 1; counter >= 0; counter--)
-                ((TreeStateNode)getChildAt(counter)).resetChildrenPaths(path);
-        }
-
-        /**
-         * Sets y origin the user object will be drawn at to
-         * <I>newYOrigin</I>.
-         */
-        protected void setYOrigin(int newYOrigin) {
-            yOrigin = newYOrigin;
-        }
-
-        /**
-         * Shifts the y origin by <code>offset</code>.
-         */
-        protected void shiftYOriginBy(int offset) {
-            yOrigin += offset;
+                getChildAt(counter).resetChildrenPaths(path);
         }
 
         /**
@@ -1360,15 +1492,16 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
 
             if(bounds == null || bounds.height == 0) {
                 xOrigin = 0;
-                preferredWidth = preferredHeight = 0;
+                preferredWidth = 0;
+                rowGeometry.setHeight(this, 0);
                 updateNodeSizes = true;
             } else {
                 xOrigin = bounds.x;
                 preferredWidth = bounds.width;
                 if(isFixedRowHeight())
-                    preferredHeight = getRowHeight();
+                    rowGeometry.setHeight(this, getRowHeight());
                 else
-                    preferredHeight = bounds.height;
+                    rowGeometry.setHeight(this, bounds.height);
             }
         }
 
@@ -1377,7 +1510,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          * is asked for it will be obtained.
          */
         protected void markSizeInvalid() {
-            preferredHeight = 0;
+            rowGeometry.setHeight(this, 0);
         }
 
         /**
@@ -1386,46 +1519,34 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
         protected void deepMarkSizeInvalid() {
             markSizeInvalid();
             for(int counter = getChildCount() - 1; counter >= 0; counter--)
-                ((TreeStateNode)getChildAt(counter)).deepMarkSizeInvalid();
+                getChildAt(counter).deepMarkSizeInvalid();
         }
 
         /**
-         * Returns the children of the receiver. If the children haven't
-         * been loaded from the model and
-         * <code>createIfNeeded</code> is true, the children are first
-         * loaded.
+         * Loads the children of the receiver from the model, if they
+         * haven't been loaded and <code>createIfNeeded</code> is true.
          */
-        protected Enumeration<TreeNode> getLoadedChildren(boolean createIfNeeded) {
+        protected void loadChildren(boolean createIfNeeded) {
             if(!createIfNeeded || hasBeenExpanded)
-                return super.children();
-
-            TreeStateNode   newNode;
-            Object          realNode = getValue();
-            TreeModel       treeModel = getModel();
-            int             count = treeModel.getChildCount(realNode);
+                return;
 
             hasBeenExpanded = true;
+            createChildren();
 
             int    childRow = getRow();
+            int    count = getChildCount();
 
             if(childRow == -1) {
                 for (int i = 0; i < count; i++) {
-                    newNode = createNodeForValue
-                        (treeModel.getChild(realNode, i));
-                    this.add(newNode);
-                    newNode.updatePreferredSize(-1);
+                    children[i].updatePreferredSize(-1);
                 }
             }
             else {
                 childRow++;
                 for (int i = 0; i < count; i++) {
-                    newNode = createNodeForValue
-                        (treeModel.getChild(realNode, i));
-                    this.add(newNode);
-                    newNode.updatePreferredSize(childRow++);
+                    children[i].updatePreferredSize(childRow++);
                 }
             }
-            return super.children();
         }
 
         /**
@@ -1440,7 +1561,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          * and expands the receiver.
          */
         protected void expandParentAndReceiver() {
-            TreeStateNode       parent = (TreeStateNode)getParent();
+            TreeStateNode       parent = getParent();
 
             if(parent != null)
                 parent.expandParentAndReceiver();
@@ -1455,7 +1576,6 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          */
         protected void expand(boolean adjustTree) {
             if (!isExpanded() && !isLeaf()) {
-                boolean         isFixed = isFixedRowHeight();
                 int             startHeight = getPreferredHeight();
                 int             originalRow = getRow();
 
@@ -1463,62 +1583,25 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 updatePreferredSize(originalRow);
 
                 if (!hasBeenExpanded) {
-                    TreeStateNode  newNode;
-                    Object         realNode = getValue();
-                    TreeModel      treeModel = getModel();
-                    int            count = treeModel.getChildCount(realNode);
                     int offset = originalRow == -1 ? -1 : originalRow + 1;
                     hasBeenExpanded = true;
+                    createChildren();
 
-                    for (int i = 0; i < count; i++) {
-                        newNode = createNodeForValue(treeModel.getChild
-                                                        (realNode, i));
-                        this.add(newNode);
-                        newNode.updatePreferredSize(offset);
+                    for (int i = getChildCount() - 1; i >= 0; i--) {
+                        children[i].updatePreferredSize(offset);
                     }
                 }
 
                 int i = originalRow;
-                Enumeration<TreeNode> cursor = preorderEnumeration();
-                cursor.nextElement(); // don't add me, I'm already in
-
-                int newYOrigin = isFixed || (this == root && !isRootVisible()) ?
-                                    0 : getYOrigin() + this.getPreferredHeight();
-
-                TreeStateNode   aNode;
-                if(!isFixed) {
-                    while (cursor.hasMoreElements()) {
-                        aNode = (TreeStateNode) cursor.nextElement();
-                        ++i;
-                        if(!updateNodeSizes && !aNode.hasValidSize())
-                            aNode.updatePreferredSize(i);
-                        visibleNodes.insertElementAt(aNode, i);
-                        newYOrigin += getRowSpacingAbove(i);
-                        aNode.setYOrigin(newYOrigin);
-                        newYOrigin += aNode.getPreferredHeight();
-                    }
-                }
-                else {
-                    while (cursor.hasMoreElements()) {
-                        aNode = (TreeStateNode) cursor.nextElement();
-                        visibleNodes.insertElementAt(aNode, ++i);
-                    }
-                }
+                List<TreeStateNode> newNodes = new ArrayList<TreeStateNode>();
+                addVisibleDescendants(newNodes); // don't add me, I'm already in
+                // The rows following this row are not updated, their Y
+                // origins are derived from the row geometry.
+                insertVisibleNodes(originalRow + 1, newNodes);
+                i += newNodes.size();
 
                 if(adjustTree && (originalRow != i ||
                                   getPreferredHeight() != startHeight)) {
-                    // Adjust the Y origin of any nodes following this row.
-                    if(!isFixed && ++i < getRowCount()) {
-                        int              counter;
-                        int              heightDiff = newYOrigin -
-                            (getYOrigin() + getPreferredHeight()) +
-                            (getPreferredHeight() - startHeight);
-
-                        for(counter = visibleNodes.size() - 1;counter >= i;
-                            counter--)
-                            ((TreeStateNode)visibleNodes.elementAt(counter)).
-                                shiftYOriginBy(heightDiff);
-                    }
                     didAdjustTree();
                     visibleNodesChanged();
                 }
@@ -1536,47 +1619,16 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
          */
         protected void collapse(boolean adjustTree) {
             if (isExpanded()) {
-                Enumeration<TreeNode> cursor = preorderEnumeration();
-                cursor.nextElement(); // don't remove me, I'm still visible
-                int rowsDeleted = 0;
-                boolean isFixed = isFixedRowHeight();
-                int lastYEnd;
-                if(isFixed)
-                    lastYEnd = 0;
-                else
-                    lastYEnd = getPreferredHeight() + getYOrigin();
+                // The descendants are visible if I am visible. Don't
+                // remove me, I'm still visible.
+                int rowsDeleted = isVisible() ? getVisibleChildCount() : 0;
                 int startHeight = getPreferredHeight();
-                int startYEnd = lastYEnd;
                 int myRow = getRow();
 
-                if(!isFixed) {
-                    while(cursor.hasMoreElements()) {
-                        TreeStateNode node = (TreeStateNode)cursor.
-                            nextElement();
-                        if (node.isVisible()) {
-                            rowsDeleted++;
-                            //visibleNodes.removeElement(node);
-                            lastYEnd = node.getYOrigin() +
-                                node.getPreferredHeight();
-                        }
-                    }
-                }
-                else {
-                    while(cursor.hasMoreElements()) {
-                        TreeStateNode node = (TreeStateNode)cursor.
-                            nextElement();
-                        if (node.isVisible()) {
-                            rowsDeleted++;
-                            //visibleNodes.removeElement(node);
-                        }
-                    }
-                }
-
-                // Clean up the visible nodes.
-                for (int counter = rowsDeleted + myRow; counter > myRow;
-                     counter--) {
-                    visibleNodes.removeElementAt(counter);
-                }
+                // Clean up the visible nodes. The rows following them are
+                // not updated, their Y origins are derived from the row
+                // geometry.
+                removeVisibleNodes(myRow + 1, rowsDeleted);
 
                 expanded = false;
 
@@ -1587,19 +1639,6 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
 
                 if(myRow != -1 && adjustTree &&
                    (rowsDeleted > 0 || startHeight != getPreferredHeight())) {
-                    // Adjust the Y origin of any rows following this one.
-                    startYEnd += (getPreferredHeight() - startHeight);
-                    if(!isFixed && (myRow + 1) < getRowCount() &&
-                       startYEnd != lastYEnd) {
-                        int                 counter, maxCounter, shiftAmount;
-
-                        shiftAmount = startYEnd - lastYEnd;
-                        for(counter = myRow + 1, maxCounter =
-                                visibleNodes.size();
-                            counter < maxCounter;counter++)
-                            ((TreeStateNode)visibleNodes.elementAt(counter))
-                                .shiftYOriginBy(shiftAmount);
-                    }
                     didAdjustTree();
                     visibleNodesChanged();
                 }
@@ -1618,7 +1657,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
             if(path != null) {
                 removeMapping(this);
                 for(int counter = getChildCount() - 1; counter >= 0; counter--)
-                    ((TreeStateNode)getChildAt(counter)).removeFromMapping();
+                    getChildAt(counter).removeFromMapping();
             }
         }
     } // End of VariableHeightLayoutCache.TreeStateNode
@@ -1668,7 +1707,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 retObject = parent.getTreePath();
             }
             else {
-                TreeStateNode   node = (TreeStateNode)parent.
+                TreeStateNode   node = parent.
                                         getChildAt(nextIndex);
 
                 retObject = node.getTreePath();
@@ -1698,7 +1737,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                 return false;
             }
             while(parent != null) {
-                TreeStateNode      newParent = (TreeStateNode)parent.
+                TreeStateNode      newParent = parent.
                                                   getParent();
 
                 if(newParent != null) {
@@ -1727,7 +1766,7 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
                                              // child count.
                 return false;
 
-            TreeStateNode       child = (TreeStateNode)parent.
+            TreeStateNode       child = parent.
                                         getChildAt(nextIndex);
 
             if(child != null && child.isExpanded()) {
@@ -1739,6 +1778,110 @@ public class ExtendedVariableHeightLayoutCache extends AbstractLayoutCache {
         }
     } // VariableHeightLayoutCache.VisibleTreeStateNodeEnumeration
 
+    /**
+     * An open addressing hash table that maps a <code>TreePath</code> to the
+     * node whose path is equal to it. The nodes are the entries of the
+     * table; the key of an entry is the path of the node. Linear probing is
+     * used, and removals shift entries back so that no deleted markers are
+     * needed. Hash codes are not stored; the hash code of a path is that of
+     * its last component, which is usually cheap to obtain.
+     */
+    private static final class PathMapping {
+        private static final int  INITIAL_CAPACITY = 16;
+
+        private TreeStateNode[]   nodes = new TreeStateNode[INITIAL_CAPACITY];
+        private int               size;
+
+        TreeStateNode get(TreePath path) {
+            int                   mask = nodes.length - 1;
+
+            for(int index = hash(path) & mask;; index = (index + 1) & mask) {
+                TreeStateNode     node = nodes[index];
+
+                if(node == null || path.equals(node.path))
+                    return node;
+            }
+        }
+
+        /**
+         * Adds a mapping from the path of <code>node</code> to
+         * <code>node</code>, replacing any mapping for an equal path.
+         */
+        void put(TreeStateNode node) {
+            int                   mask = nodes.length - 1;
+            int                   index = hash(node.path) & mask;
+
+            for(;; index = (index + 1) & mask) {
+                TreeStateNode     existing = nodes[index];
+
+                if(existing == null)
+                    break;
+                if(node.path.equals(existing.path)) {
+                    nodes[index] = node;
+                    return;
+                }
+            }
+            nodes[index] = node;
+            // Keep the load factor at or below 3/4
+            if(++size * 4 > nodes.length * 3)
+                resize(nodes.length * 2);
+        }
+
+        void remove(TreePath path) {
+            int                   mask = nodes.length - 1;
+            int                   index = hash(path) & mask;
+
+            for(;; index = (index + 1) & mask) {
+                TreeStateNode     node = nodes[index];
+
+                if(node == null)
+                    return;
+                if(path.equals(node.path))
+                    break;
+            }
+            size--;
+            // Shift back any following entries whose probe sequence
+            // passes through the vacated slot.
+            for(int next = (index + 1) & mask; nodes[next] != null;
+                next = (next + 1) & mask) {
+                int               home = hash(nodes[next].path) & mask;
+
+                if(((next - home) & mask) >= ((next - index) & mask)) {
+                    nodes[index] = nodes[next];
+                    index = next;
+                }
+            }
+            nodes[index] = null;
+        }
+
+        void clear() {
+            nodes = new TreeStateNode[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            TreeStateNode[]       oldNodes = nodes;
+            int                   mask = capacity - 1;
+
+            nodes = new TreeStateNode[capacity];
+            for(TreeStateNode node : oldNodes) {
+                if(node != null) {
+                    int           index = hash(node.path) & mask;
+
+                    while(nodes[index] != null)
+                        index = (index + 1) & mask;
+                    nodes[index] = node;
+                }
+            }
+        }
+
+        private static int hash(TreePath path) {
+            int                   h = path.hashCode() * 0x9E3779B9;
+
+            return h ^ (h >>> 16);
+        }
+    }
+
     /**
      * Returns the {@link TreePath} that identifies the changed nodes.
      *
@@ -104,11 +104,12 @@ public class Images {
      * The graphite filter converts Mac OS X artwork from "Blue Appearance" to
      * "Graphite Appearance" by desaturing the colors.
      */
-    public static class GraphiteFilter extends RGBImageFilter {
+    public static class GraphiteFilter extends BulkImageFilter {
 
         private final static float saturationAdjust = 0.179f;
 
-        public int filterRGB(int x, int y, int rgb) {
+        @Override
+        protected int filter(int rgb) {
             int alpha = rgb & 0xff000000;
             int red = (rgb >>> 16) & 0xff;
             int green = (rgb >>> 8) & 0xff;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2021 Alan Snyder.
+ * Copyright (c) 2018-2026 Alan Snyder.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
@@ -9,9 +9,12 @@
 package org.violetlib.aqua;
 
 import java.awt.*;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.WeakHashMap;
 import javax.swing.*;
 
@@ -20,11 +23,43 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * Softly cache processed images and image analysis results to avoid recomputation.
+ * <p>
+ * Source images and icons are weakly referenced. A dynamic icon is rendered into an image once per icon size and
+ * current image; the rendered image is reused for all operations on that icon. Other icons that are not image icons
+ * may paint differently each time, so they are rendered on each request, and the images processed from them are not
+ * cached. Processed images are softly
+ * referenced and limited by an estimated memory ceiling, with least recently used images discarded first. Every
+ * entry is charged at least a fixed amount, so that images of unknown size do not accumulate without limit, and
+ * entries whose images have been collected are removed when the cache is next accessed.
+ * <p>
+ * This class is thread safe. Processed images are created without holding the cache lock.
  */
 
 public abstract class ProcessedImageCache {
 
-    private final WeakHashMap<Object,ImageInfo> imageMap = new WeakHashMap<>();
+    private final WeakHashMap<Icon,IconInfo> iconMap = new WeakHashMap<>();
+    private final WeakHashMap<Image,ImageInfo> imageMap = new WeakHashMap<>();
+    private final LinkedHashMap<ProcessedImageKey,ProcessedImage> processedImages
+            = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<Image> clearedImages = new ReferenceQueue<>();
+
+    // The estimated cost of an entry, excluding the pixels of the image
+    private static final long ENTRY_BYTE_COUNT = 256;
+
+    private long maxByteCount;
+    private long byteCount;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    protected ProcessedImageCache(long maxByteCount) {
+        this.maxByteCount = maxByteCount;
+    }
+
+    protected ProcessedImageCache() {
+        this(16 * 1024 * 1024);
+    }
 
     /**
      * Return the processed version of the specified icon.
@@ -33,8 +68,14 @@ public abstract class ProcessedImageCache {
      * @return the processed version of {@code icon}, or null if the icon is not valid.
      */
     public @Nullable Image getProcessedImage(@NotNull Icon icon, @Nullable Object operator) {
-        ImageInfo info = getIconImageInfo(icon);
-        return info != null ? info.getProcessedImage(operator) : null;
+        IconInfo info = getIconInfo(icon);
+        if (info == null) {
+            return null;
+        }
+        if (!info.isCached) {
+            return processImage(info.image, info.imageInfo, operator);
+        }
+        return getProcessedImage(info.image, info.imageInfo, operator);
     }
 
     /**
@@ -45,7 +86,7 @@ public abstract class ProcessedImageCache {
      */
     public @NotNull Image getProcessedImage(@NotNull Image image, @NotNull Object operator) {
         ImageInfo info = getImageInfo(image);
-        return info.getProcessedImage(operator);
+        return getProcessedImage(image, info, operator);
     }
 
     /**
@@ -64,71 +105,282 @@ public abstract class ProcessedImageCache {
      * @return true if and only if the icon is a template image.
      */
     public boolean isTemplateIcon(@NotNull Icon icon) {
-        ImageInfo info = getIconImageInfo(icon);
-        return info != null && info.isTemplate;
+        IconInfo info = getIconInfo(icon);
+        return info != null && info.imageInfo.isTemplate;
     }
 
-    private @Nullable ImageInfo getIconImageInfo(@NotNull Icon icon) {
-        ImageInfo info = imageMap.get(icon);
-        if (info == null) {
+    /**
+     * Set the limit on the estimated memory used by processed images. Images are discarded if necessary to satisfy
+     * the new limit.
+     * @param count The maximum number of bytes.
+     */
+    public synchronized void setMaximumByteCount(long count) {
+        maxByteCount = count;
+        evict();
+    }
+
+    public synchronized long getMaximumByteCount() {
+        return maxByteCount;
+    }
+
+    /**
+     * Return the estimated number of bytes used by processed images in the cache.
+     */
+    public synchronized long getByteCount() {
+        purge();
+        return byteCount;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return the number of processed images discarded to satisfy the memory limit.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private @Nullable IconInfo getIconInfo(@NotNull Icon icon) {
+        int width = icon.getIconWidth();
+        int height = icon.getIconHeight();
+        // The image of an image icon or a dynamic icon can be replaced
+        Image iconImage;
+        if (icon instanceof ImageIcon) {
+            iconImage = ((ImageIcon) icon).getImage();
+        } else if (icon instanceof DynamicIcon) {
+            iconImage = ((DynamicIcon) icon).getCurrentImage();
+        } else {
+            // The rendering of an arbitrary icon can depend upon state that cannot be observed
             Image image = AquaIcon.getImageForIcon(icon);
-            if (image != null) {
-                info = getImageInfo(image);
-                imageMap.put(icon, info);
+            if (image == null) {
+                return null;
             }
+            return new IconInfo(width, height, null, image, getImageInfo(image), false);
+        }
+
+        synchronized (this) {
+            IconInfo info = iconMap.get(icon);
+            if (info != null && info.isValid(width, height, iconImage)) {
+                return info;
+            }
+        }
+
+        // The icon may be painted on the caller's thread, but not while holding the lock.
+        Image image = AquaIcon.getImageForIcon(icon);
+        if (image == null) {
+            return null;
+        }
+        ImageInfo imageInfo = getImageInfo(image);
+        synchronized (this) {
+            IconInfo info = iconMap.get(icon);
+            if (info != null && info.isValid(width, height, iconImage)) {
+                return info;
+            }
+            info = new IconInfo(width, height, iconImage, image, imageInfo, true);
+            iconMap.put(icon, info);
+            return info;
         }
-        return info;
     }
 
     private @NotNull ImageInfo getImageInfo(@NotNull Image image) {
-        ImageInfo info = imageMap.get(image);
-        if (info == null) {
-            boolean isTemplate = determineTemplateImage(image);
-            info = new ImageInfo(image, isTemplate);
-            imageMap.put(image, info);
+        synchronized (this) {
+            ImageInfo info = imageMap.get(image);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        boolean isTemplate = determineTemplateImage(image);
+        synchronized (this) {
+            ImageInfo info = imageMap.get(image);
+            if (info == null) {
+                info = new ImageInfo(isTemplate);
+                imageMap.put(image, info);
+            }
+            return info;
         }
-        return info;
     }
 
-    private class ImageInfo {
-        @NotNull Image source;
-        boolean isTemplate;
-        @Nullable Map<Object,SoftReference<Image>> processedImageMap;
+    private @NotNull Image getProcessedImage(@NotNull Image source, @NotNull ImageInfo info, @Nullable Object operator) {
+        if (operator == null) {
+            return source;
+        }
 
-        private ImageInfo(@NotNull Image source, boolean isTemplate) {
-            this.source = source;
-            this.isTemplate = isTemplate;
+        if (operator instanceof Color && !info.isTemplate) {
+            return source;
+        }
+
+        ProcessedImageKey key = new ProcessedImageKey(info, operator);
+        synchronized (this) {
+            purge();
+            ProcessedImage p = processedImages.get(key);
+            if (p != null) {
+                Image result = p.get();
+                if (result != null) {
+                    hitCount++;
+                    return result;
+                }
+                processedImages.remove(key);
+                byteCount -= p.byteCount;
+            }
+            missCount++;
         }
 
-        public @NotNull Image getProcessedImage(@Nullable Object operator) {
-            if (processedImageMap == null) {
-                processedImageMap = new HashMap<>();
+        Image result = processImage(source, info, operator);
+
+        synchronized (this) {
+            ProcessedImage p = processedImages.get(key);
+            if (p != null) {
+                Image existing = p.get();
+                if (existing != null) {
+                    return existing;
+                }
+                processedImages.remove(key);
+                byteCount -= p.byteCount;
             }
+            long count = ENTRY_BYTE_COUNT + (result == source ? 0 : estimateByteCount(result));
+            processedImages.put(key, new ProcessedImage(key, result, count, clearedImages));
+            byteCount += count;
+            evict();
+        }
+        return result;
+    }
+
+    /**
+     * Create the processed version of an image, without using the cache.
+     */
+    private @NotNull Image processImage(@NotNull Image source, @NotNull ImageInfo info, @Nullable Object operator) {
+        if (operator == null) {
+            return source;
+        }
+        if (operator instanceof Color) {
+            return info.isTemplate ? createImageFromTemplate(source, (Color) operator) : source;
+        }
+        return createProcessedImage(source, operator);
+    }
 
-            Image result = null;
-            SoftReference<Image> imageRef = processedImageMap.get(operator);
-            if (imageRef != null) {
-                result = imageRef.get();
+    /**
+     * Remove the entries whose images have been collected.
+     */
+    private void purge() {
+        ProcessedImage p;
+        while ((p = (ProcessedImage) clearedImages.poll()) != null) {
+            // the entry may already have been replaced
+            if (processedImages.get(p.key) == p) {
+                processedImages.remove(p.key);
+                byteCount -= p.byteCount;
             }
+        }
+    }
 
-            if (result != null) {
-                return result;
+    private void evict() {
+        if (byteCount > maxByteCount) {
+            Iterator<Map.Entry<ProcessedImageKey,ProcessedImage>> it = processedImages.entrySet().iterator();
+            while (byteCount > maxByteCount && it.hasNext()) {
+                ProcessedImage p = it.next().getValue();
+                it.remove();
+                byteCount -= p.byteCount;
+                evictionCount++;
             }
+        }
+    }
 
-            if (operator == null) {
-                result = source;
-            } else if (operator instanceof Color) {
-                Color color = (Color) operator;
-                if (isTemplate) {
-                    result = createImageFromTemplate(source, color);
-                } else {
-                    result = source;
-                }
-            } else {
-                result = createProcessedImage(source, operator);
+    /**
+     * Estimate the memory used by an image. Multiresolution images are assumed to include a 2x variant.
+     */
+    private static long estimateByteCount(@NotNull Image image) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        long count = 4L * width * height;
+        return image instanceof AquaMultiResolutionImage ? 5 * count : count;
+    }
+
+    private static class IconInfo {
+        final int width;
+        final int height;
+        final @Nullable Image iconImage;
+        final @NotNull Image image;
+        final @NotNull ImageInfo imageInfo;
+        final boolean isCached;
+
+        private IconInfo(int width,
+                         int height,
+                         @Nullable Image iconImage,
+                         @NotNull Image image,
+                         @NotNull ImageInfo imageInfo,
+                         boolean isCached) {
+            this.width = width;
+            this.height = height;
+            this.iconImage = iconImage;
+            this.image = image;
+            this.imageInfo = imageInfo;
+            this.isCached = isCached;
+        }
+
+        boolean isValid(int width, int height, @Nullable Image iconImage) {
+            return this.width == width && this.height == height && iconImage == this.iconImage;
+        }
+    }
+
+    /**
+     * Information about a source image. To allow the source image to be collected, this object does not refer to the
+     * source image. It serves as the identity of the source image in processed image keys.
+     */
+    private static class ImageInfo {
+        final boolean isTemplate;
+
+        private ImageInfo(boolean isTemplate) {
+            this.isTemplate = isTemplate;
+        }
+    }
+
+    private static class ProcessedImageKey {
+        final @NotNull ImageInfo info;
+        final @NotNull Object operator;
+
+        private ProcessedImageKey(@NotNull ImageInfo info, @NotNull Object operator) {
+            this.info = info;
+            this.operator = operator;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ProcessedImageKey)) {
+                return false;
             }
-            processedImageMap.put(operator, new SoftReference<>(result));
-            return result;
+            ProcessedImageKey other = (ProcessedImageKey) o;
+            return info == other.info && operator.equals(other.operator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(info), operator);
+        }
+    }
+
+    private static class ProcessedImage extends SoftReference<Image> {
+        final @NotNull ProcessedImageKey key;
+        final long byteCount;
+
+        private ProcessedImage(@NotNull ProcessedImageKey key,
+                               @NotNull Image image,
+                               long byteCount,
+                               @NotNull ReferenceQueue<? super Image> queue) {
+            super(image, queue);
+            this.key = key;
+            this.byteCount = byteCount;
         }
     }
 
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.violetlib.jnr.aqua.AquaUIPainter;
+import org.violetlib.jnr.aqua.Configuration;
+
+/**
+ * A cache of rendered widget images. A widget is identified by its configuration, its size, the appearance, and the
+ * scale factor of the destination. On a cache hit, the rendered pixels are drawn without invoking the renderer.
+ * <p>
+ * The cache is limited by a pixel budget. Least recently used images are discarded when the budget is exceeded.
+ * Images that would use a large fraction of the budget are not cached. The cache is cleared when the system
+ * appearance changes.
+ * <p>
+ * Caching may be disabled by setting the system property {@code VAqua.disableRenderingCache} to {@code true}.
+ */
+
+public class RenderedImageCache {
+
+    /**
+     * A renderer paints a configuration at the origin of a graphics context. The graphics context has been scaled
+     * to match the destination.
+     */
+
+    public interface ConfigurationRenderer {
+        void render(@NotNull Graphics2D g, @NotNull Configuration configuration, int width, int height);
+    }
+
+    private static final boolean isDisabled = "true".equals(AquaUtils.getProperty("VAqua.disableRenderingCache"));
+
+    private static final RenderedImageCache INSTANCE = new RenderedImageCache();
+
+    public static @NotNull RenderedImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Paint a configuration using a native painter. The cached image is used if available. Otherwise, the
+     * configuration is rendered and the result is cached.
+     *
+     * @param g The graphics context.
+     * @param painter The native painter.
+     * @param c The component whose appearance is to be used.
+     * @param configuration The configuration to paint.
+     * @param x The X coordinate of the widget.
+     * @param y The Y coordinate of the widget.
+     * @param width The width of the widget.
+     * @param height The height of the widget.
+     */
+
+    public static void paint(@NotNull Graphics g,
+                             @NotNull AquaUIPainter painter,
+                             @NotNull Component c,
+                             @NotNull Configuration configuration,
+                             int x,
+                             int y,
+                             int width,
+                             int height) {
+        AquaAppearance appearance = AppearanceManager.getAppearance(c);
+        painter.configureAppearance(appearance);
+        painter.configure(width, height);
+        if (isDisabled) {
+            painter.getPainter(configuration).paint(g, x, y);
+        } else {
+            INSTANCE.paint(g, configuration, appearance, x, y, width, height, new NativeRenderer(painter));
+        }
+    }
+
+    /**
+     * A renderer that uses a configured native painter.
+     */
+
+    private static class NativeRenderer implements ConfigurationRenderer {
+        private final @NotNull AquaUIPainter painter;
+
+        public NativeRenderer(@NotNull AquaUIPainter painter) {
+            this.painter = painter;
+        }
+
+        @Override
+        public void render(@NotNull Graphics2D g, @NotNull Configuration configuration, int width, int height) {
+            painter.getPainter(configuration).paint(g, 0, 0);
+        }
+    }
+
+    private final LinkedHashMap<Key,BufferedImage> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final int maxPixelCount;
+    private final int maxImagePixelCount;
+    private int currentPixelCount;
+
+    private long hitCount;
+    private long missCount;
+    private long uncachedCount;
+    private long evictionCount;
+
+    public RenderedImageCache(int maxPixelCount) {
+        this.maxPixelCount = maxPixelCount;
+        this.maxImagePixelCount = maxPixelCount / 16;
+    }
+
+    public RenderedImageCache() {
+        this((16 * 1024 * 1024) / 4); // 16Mb of pixels
+    }
+
+    /**
+     * Paint a configuration using the specified renderer. The cached image is used if available. Otherwise, the
+     * configuration is rendered and the result is cached.
+     *
+     * @param g The graphics context.
+     * @param configuration The configuration to paint.
+     * @param appearance The appearance used to render the configuration. Appearances are compared by identity.
+     * @param x The X coordinate of the widget.
+     * @param y The Y coordinate of the widget.
+     * @param width The width of the widget.
+     * @param height The height of the widget.
+     * @param renderer The renderer to use if the image is not cached.
+     */
+
+    public void paint(@NotNull Graphics g,
+                      @NotNull Configuration configuration,
+                      @Nullable Object appearance,
+                      int x,
+                      int y,
+                      int width,
+                      int height,
+                      @NotNull ConfigurationRenderer renderer) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int scale = getScale(g);
+        int rasterWidth = width * scale;
+        int rasterHeight = height * scale;
+        if (scale == 0 || (long) rasterWidth * rasterHeight > maxImagePixelCount) {
+            synchronized (this) {
+                uncachedCount++;
+            }
+            paintDirectly((Graphics2D) g, configuration, x, y, width, height, renderer);
+            return;
+        }
+
+        Key key = new Key(configuration, appearance, width, height, scale);
+        BufferedImage image;
+        synchronized (this) {
+            image = map.get(key);
+            if (image != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+
+        if (image == null) {
+            image = new BufferedImage(rasterWidth, rasterHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D ig = image.createGraphics();
+            ig.scale(scale, scale);
+            renderer.render(ig, configuration, width, height);
+            ig.dispose();
+            put(key, image);
+        }
+
+        g.drawImage(image, x, y, width, height, null);
+    }
+
+    private void paintDirectly(@NotNull Graphics2D g,
+                               @NotNull Configuration configuration,
+                               int x,
+                               int y,
+                               int width,
+                               int height,
+                               @NotNull ConfigurationRenderer renderer) {
+        Graphics2D gg = (Graphics2D) g.create();
+        gg.translate(x, y);
+        renderer.render(gg, configuration, width, height);
+        gg.dispose();
+    }
+
+    private synchronized void put(@NotNull Key key, @NotNull BufferedImage image) {
+        int pixelCount = image.getWidth() * image.getHeight();
+        BufferedImage previous = map.put(key, image);
+        if (previous != null) {
+            currentPixelCount -= previous.getWidth() * previous.getHeight();
+        }
+        currentPixelCount += pixelCount;
+        if (currentPixelCount > maxPixelCount) {
+            Iterator<Map.Entry<Key,BufferedImage>> it = map.entrySet().iterator();
+            while (currentPixelCount > maxPixelCount && it.hasNext()) {
+                Map.Entry<Key,BufferedImage> e = it.next();
+                BufferedImage im = e.getValue();
+                it.remove();
+                currentPixelCount -= im.getWidth() * im.getHeight();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Discard all cached images. This method is called when the system appearance changes.
+     */
+
+    public synchronized void flush() {
+        map.clear();
+        currentPixelCount = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return the number of paint requests that were not eligible for caching.
+     */
+
+    public synchronized long getUncachedCount() {
+        return uncachedCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int getPixelCount() {
+        return currentPixelCount;
+    }
+
+    public synchronized int getImageCount() {
+        return map.size();
+    }
+
+    /**
+     * Determine the integral scale factor of a graphics context. Cached images are usable only when the transform
+     * is a translation combined with a uniform integral scale.
+     * @return the scale factor, or zero if cached images are not usable.
+     */
+
+    static int getScale(@NotNull Graphics g) {
+        if (!(g instanceof Graphics2D)) {
+            return 0;
+        }
+        AffineTransform t = ((Graphics2D) g).getTransform();
+        int type = t.getType();
+        if ((type & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+            return 0;
+        }
+        double s = t.getScaleX();
+        int scale = (int) Math.round(s);
+        return scale >= 1 && Math.abs(s - scale) < 1e-6 ? scale : 0;
+    }
+
+    private static class Key {
+        private final @NotNull Configuration configuration;
+        private final @Nullable Object appearance;
+        private final int width;
+        private final int height;
+        private final int scale;
+        private final int hash;
+
+        public Key(@NotNull Configuration configuration, @Nullable Object appearance, int width, int height, int scale) {
+            this.configuration = configuration;
+            this.appearance = appearance;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.hash = Objects.hash(configuration, System.identityHashCode(appearance), width, height, scale);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return appearance == other.appearance
+                    && width == other.width
+                    && height == other.height
+                    && scale == other.scale
+                    && configuration.equals(other.configuration);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
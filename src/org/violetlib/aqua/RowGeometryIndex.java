@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An index of the vertical geometry of a sequence of rows. Each row has a height and an amount of spacing above it.
+ * The spacing above the first row is not used. The Y origin of a row is the sum of the heights of the preceding rows
+ * and the spacing above the row and the preceding rows, excluding the first row.
+ * <p>
+ * The rows are represented by entries in a balanced binary tree (a treap) ordered by row index, in which each entry
+ * records the number of rows and the total extent of its subtree. Finding the entry for a row, the row of an entry,
+ * the Y origin of a row, and the row at a Y location, changing the height of a row, and inserting or removing a run
+ * of rows are all logarithmic in the number of rows (plus the length of an inserted run).
+ * <p>
+ * The entries are supplied by the client. A client may use its own row objects as entries by extending {@link Entry},
+ * avoiding a separate object per row. An entry that has been removed is no longer associated with a row. This class
+ * is not thread safe.
+ */
+
+public final class RowGeometryIndex {
+
+    /**
+     * An entry in the index, representing one row.
+     */
+
+    public static class Entry {
+        private @Nullable Entry left;
+        private @Nullable Entry right;
+        private @Nullable Entry parent;
+        private int count;
+        private int extent;
+        private int height;
+        private int spacing;
+
+        protected Entry() {
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getSpacing() {
+            return spacing;
+        }
+    }
+
+    private @Nullable Entry root;
+
+    // The results of a split
+    private @Nullable Entry splitLeft;
+    private @Nullable Entry splitRight;
+
+    /**
+     * Return the number of rows.
+     */
+
+    public int size() {
+        return count(root);
+    }
+
+    /**
+     * Remove all rows.
+     */
+
+    public void clear() {
+        detach(root);
+        root = null;
+    }
+
+    /**
+     * Determine whether an entry represents a row in this index.
+     */
+
+    public boolean contains(@NotNull Entry e) {
+        return e.parent != null || e == root;
+    }
+
+    /**
+     * Insert a run of rows.
+     * @param index The index of the first inserted row.
+     * @param entries Entries representing the inserted rows, in order. The entries must not be in an index.
+     */
+
+    public void insert(int index, @NotNull List<? extends Entry> entries) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Invalid row index: " + index);
+        }
+        if (!entries.isEmpty()) {
+            Entry run = build(entries);
+            split(root, index);
+            Entry before = splitLeft;
+            Entry after = splitRight;
+            splitLeft = splitRight = null;
+            root = merge(merge(before, run), after);
+            root.parent = null;
+        }
+    }
+
+    /**
+     * Remove a run of rows.
+     * @param index The index of the first row to remove.
+     * @param count The number of rows to remove.
+     */
+
+    public void remove(int index, int count) {
+        if (index < 0 || count < 0 || index + count > size()) {
+            throw new IndexOutOfBoundsException("Invalid row range: " + index + " + " + count);
+        }
+        if (count > 0) {
+            split(root, index);
+            Entry before = splitLeft;
+            split(splitRight, count);
+            Entry removed = splitLeft;
+            Entry after = splitRight;
+            splitLeft = splitRight = null;
+            detach(removed);
+            root = merge(before, after);
+            if (root != null) {
+                root.parent = null;
+            }
+        }
+    }
+
+    /**
+     * Return the entry for the specified row.
+     */
+
+    public @NotNull Entry get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid row index: " + index);
+        }
+        Entry e = root;
+        for (;;) {
+            int leftCount = count(e.left);
+            if (index < leftCount) {
+                e = e.left;
+            } else if (index == leftCount) {
+                return e;
+            } else {
+                index -= leftCount + 1;
+                e = e.right;
+            }
+        }
+    }
+
+    /**
+     * Return the entry for the first row.
+     * @return the entry, or null if there are no rows.
+     */
+
+    public @Nullable Entry first() {
+        Entry e = root;
+        if (e != null) {
+            while (e.left != null) {
+                e = e.left;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Return the entry for the row following the row of the specified entry. Visiting all of the rows using this
+     * method takes linear time.
+     * @return the entry, or null if the entry represents the last row.
+     */
+
+    public @Nullable Entry next(@NotNull Entry e) {
+        if (e.right != null) {
+            e = e.right;
+            while (e.left != null) {
+                e = e.left;
+            }
+            return e;
+        }
+        while (e.parent != null) {
+            Entry p = e.parent;
+            if (e == p.left) {
+                return p;
+            }
+            e = p;
+        }
+        return null;
+    }
+
+    /**
+     * Return the row represented by the specified entry.
+     * @return the row index, or -1 if the entry is not in the index.
+     */
+
+    public int indexOf(@NotNull Entry e) {
+        int index = count(e.left);
+        Entry x = e;
+        while (x.parent != null) {
+            Entry p = x.parent;
+            if (x == p.right) {
+                index += count(p.left) + 1;
+            }
+            x = p;
+        }
+        return x == root ? index : -1;
+    }
+
+    /**
+     * Set the height and spacing of a row.
+     */
+
+    public void set(@NotNull Entry e, int height, int spacing) {
+        int delta = (height + spacing) - (e.height + e.spacing);
+        e.height = height;
+        e.spacing = spacing;
+        if (delta != 0) {
+            for (Entry x = e; x != null; x = x.parent) {
+                x.extent += delta;
+            }
+        }
+    }
+
+    /**
+     * Set the height of a row.
+     */
+
+    public void setHeight(@NotNull Entry e, int height) {
+        set(e, height, e.spacing);
+    }
+
+    /**
+     * Return the Y origin of a row.
+     * @return the Y origin, or -1 if the entry is not in the index.
+     */
+
+    public int getY(@NotNull Entry e) {
+        int y = extent(e.left) + e.spacing;
+        Entry x = e;
+        while (x.parent != null) {
+            Entry p = x.parent;
+            if (x == p.right) {
+                y += extent(p.left) + p.height + p.spacing;
+            }
+            x = p;
+        }
+        return x == root ? y - firstEntry().spacing : -1;
+    }
+
+    /**
+     * Return the total height of the rows, including spacing.
+     */
+
+    public int getTotalHeight() {
+        return root != null ? root.extent - firstEntry().spacing : 0;
+    }
+
+    /**
+     * Return the index of the last row whose Y origin is less than or equal to the specified location. If the location
+     * precedes the first row, the first row is returned.
+     * @return the row index, or -1 if there are no rows.
+     */
+
+    public int getIndexAtY(int location) {
+        if (root == null) {
+            return -1;
+        }
+        int target = location + firstEntry().spacing;
+        int base = 0;
+        int index = 0;
+        int result = 0;
+        Entry e = root;
+        while (e != null) {
+            int leftExtent = extent(e.left);
+            if (base + leftExtent + e.spacing <= target) {
+                result = index + count(e.left);
+                base += leftExtent + e.height + e.spacing;
+                index = result + 1;
+                e = e.right;
+            } else {
+                e = e.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the entry for the first row, which must exist.
+     */
+
+    private @NotNull Entry firstEntry() {
+        Entry e = first();
+        assert e != null;
+        return e;
+    }
+
+    /**
+     * Build a tree from a sequence of entries, in linear time.
+     */
+
+    private @NotNull Entry build(@NotNull List<? extends Entry> entries) {
+        Entry[] stack = new Entry[entries.size()];
+        int top = 0;
+        for (Entry e : entries) {
+            e.left = e.right = e.parent = null;
+            Entry last = null;
+            while (top > 0 && priority(stack[top - 1]) < priority(e)) {
+                last = stack[--top];
+                // The subtree of a popped entry is complete
+                update(last);
+            }
+            e.left = last;
+            if (last != null) {
+                last.parent = e;
+            }
+            if (top > 0) {
+                stack[top - 1].right = e;
+                e.parent = stack[top - 1];
+            }
+            stack[top++] = e;
+        }
+        while (top > 0) {
+            update(stack[--top]);
+        }
+        return stack[0];
+    }
+
+    /**
+     * Split a tree into the first {@code index} entries and the remaining entries. The results are left in
+     * {@code splitLeft} and {@code splitRight}. The parent links of the results are not cleared.
+     */
+
+    private void split(@Nullable Entry t, int index) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int leftCount = count(t.left);
+        if (index <= leftCount) {
+            split(t.left, index);
+            t.left = splitRight;
+            if (splitRight != null) {
+                splitRight.parent = t;
+            }
+            update(t);
+            splitRight = t;
+        } else {
+            split(t.right, index - leftCount - 1);
+            t.right = splitLeft;
+            if (splitLeft != null) {
+                splitLeft.parent = t;
+            }
+            update(t);
+            splitLeft = t;
+        }
+    }
+
+    /**
+     * Merge two trees, all of whose entries in the first tree precede all of the entries in the second tree.
+     */
+
+    private @Nullable Entry merge(@Nullable Entry a, @Nullable Entry b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (priority(a) > priority(b)) {
+            Entry r = merge(a.right, b);
+            a.right = r;
+            r.parent = a;
+            update(a);
+            return a;
+        } else {
+            Entry l = merge(a, b.left);
+            b.left = l;
+            l.parent = b;
+            update(b);
+            return b;
+        }
+    }
+
+    /**
+     * Clear the links of the entries in a subtree that is no longer part of the index.
+     */
+
+    private static void detach(@Nullable Entry e) {
+        while (e != null) {
+            detach(e.left);
+            Entry next = e.right;
+            e.left = e.right = e.parent = null;
+            e = next;
+        }
+    }
+
+    /**
+     * Return the priority of an entry. The identity hash code serves as a random priority that does not need to be
+     * stored in the entry.
+     */
+
+    private static int priority(@NotNull Entry e) {
+        return System.identityHashCode(e);
+    }
+
+    private static void update(@NotNull Entry e) {
+        e.count = 1 + count(e.left) + count(e.right);
+        e.extent = extent(e.left) + extent(e.right) + e.height + e.spacing;
+    }
+
+    private static int count(@Nullable Entry e) {
+        return e != null ? e.count : 0;
+    }
+
+    private static int extent(@Nullable Entry e) {
+        return e != null ? e.extent : 0;
+    }
+}
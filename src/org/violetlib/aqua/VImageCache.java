@@ -39,26 +39,22 @@ import java.lang.ref.SoftReference;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * A copy of sun.awt.image.ImageCache.
+ * A cache of images, based on sun.awt.image.ImageCache. Images are softly referenced. The cache is limited by a budget
+ * in bytes; least recently used images are discarded when the budget is exceeded.
+ * <p>
+ * The cache is divided into a small number of shards, each with its own lock, its own LRU ordering, and an equal
+ * portion of the budget. A key is assigned to a shard by its hash code. Lookups of keys in different shards do not
+ * contend. An image that is larger than the budget of a shard is not cached, so that it cannot displace the entire
+ * contents of the shard.
  */
 public class VImageCache {
-    // Ordered Map keyed by args hash, ordered by most recent accessed entry.
-    private final LinkedHashMap<PixelsKey, ImageSoftReference> map
-            = new LinkedHashMap<>(16, 0.75f, true);
 
-    // Maximum number of pixels to cache, this is used if maxCount
-    private final int maxPixelCount;
-    // The current number of pixels stored in the cache
-    private int currentPixelCount = 0;
-
-    // Lock for concurrent access to map
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    // Reference queue for tracking lost softreferences to images in the cache
-    private final ReferenceQueue<Image> referenceQueue = new ReferenceQueue<>();
+    private static final int DEFAULT_MAX_BYTE_COUNT = 8 * 1024 * 1024; // 8Mb
+    private static final int DEFAULT_SHARD_COUNT = 4;
 
     private static final VImageCache INSTANCE = new VImageCache();
 
@@ -66,44 +62,124 @@ public class VImageCache {
         return INSTANCE;
     }
 
+    private final Shard[] shards;
+    private final int shardMask;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final AtomicLong currentByteCount = new AtomicLong();
+
+    /**
+     * Create a cache.
+     * @param maxByteCount The maximum number of bytes of image data to retain.
+     * @param shardCount The number of independently locked shards. This value is rounded up to a power of two. Each
+     *                   shard receives an equal portion of the budget, which limits the size of a cacheable image.
+     */
+    public VImageCache(long maxByteCount, int shardCount) {
+        int n = 1;
+        while (n < shardCount) {
+            n <<= 1;
+        }
+        shards = new Shard[n];
+        shardMask = n - 1;
+        long shardByteCount = Math.max(1, maxByteCount / n);
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard(shardByteCount);
+        }
+    }
+
     public VImageCache(int maxPixelCount) {
-        this.maxPixelCount = maxPixelCount;
+        this(4L * maxPixelCount, DEFAULT_SHARD_COUNT);
     }
 
     public VImageCache() {
-        this((8 * 1024 * 1024) / 4); // 8Mb of pixels
+        this(DEFAULT_MAX_BYTE_COUNT, DEFAULT_SHARD_COUNT);
     }
 
     public void flush() {
-        lock.writeLock().lock();
-        try {
-            map.clear();
-        } finally {
-            lock.writeLock().unlock();
+        for (Shard shard : shards) {
+            shard.flush();
         }
     }
 
     public Image getImage(PixelsKey key) {
-        final ImageSoftReference ref;
-        lock.readLock().lock();
-        try {
-            ref = map.get(key);
-        } finally {
-            lock.readLock().unlock();
+        Image image = getShard(key).get(key);
+        if (image != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
         }
-        return ref == null ? null : ref.get();
+        return image;
     }
 
     /**
-     * Sets the cached image for the specified constraints.
+     * Sets the cached image for the specified constraints. An image that is too large to fit in the budget of its
+     * shard is not cached.
      *
      * @param key The key with which the specified image is to be associated
      * @param image  The image to store in cache
      */
     public void setImage(PixelsKey key, Image image) {
+        getShard(key).put(key, image);
+    }
+
+    /**
+     * Return the number of lookups that found an image.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Return the number of lookups that did not find an image.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Return the number of images discarded to satisfy the budget. Images whose soft references were cleared by the
+     * garbage collector are not counted.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Return the number of bytes of image data currently accounted to the cache.
+     */
+    public long getByteCount() {
+        return currentByteCount.get();
+    }
+
+    private Shard getShard(PixelsKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & shardMask];
+    }
+
+    private class Shard {
+        // Ordered Map keyed by args hash, ordered by most recent accessed entry.
+        private final LinkedHashMap<PixelsKey, ImageSoftReference> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        // Reference queue for tracking lost softreferences to images in this shard
+        private final ReferenceQueue<Image> referenceQueue = new ReferenceQueue<>();
+
+        private final long maxByteCount;
+        private long byteCount;
+
+        public Shard(long maxByteCount) {
+            this.maxByteCount = maxByteCount;
+        }
+
+        public synchronized Image get(PixelsKey key) {
+            // An access ordered map is modified by get(), so reads must be exclusive
+            ImageSoftReference ref = map.get(key);
+            return ref == null ? null : ref.get();
+        }
 
-        lock.writeLock().lock();
-        try {
+        public synchronized void put(PixelsKey key, Image image) {
             ImageSoftReference ref = map.get(key);
 
             // check if currently in map
@@ -112,56 +188,87 @@ public class VImageCache {
                     return;
                 }
                 // soft image has been removed
-                currentPixelCount -= key.getPixelCount();
                 map.remove(key);
-            };
+                release(ref.byteCount);
+            }
+
+            // an image larger than the budget would evict every other image and still not fit
+            long newByteCount = key.getByteCount();
+            if (newByteCount > maxByteCount) {
+                return;
+            }
 
+            // add new image to byte count
+            byteCount += newByteCount;
+            currentByteCount.addAndGet(newByteCount);
 
-            // add new image to pixel count
-            final int newPixelCount = key.getPixelCount();
-            currentPixelCount += newPixelCount;
             // clean out lost references if not enough space
-            if (currentPixelCount > maxPixelCount) {
-                while ((ref = (ImageSoftReference)referenceQueue.poll()) != null) {
-                    //reference lost
-                    map.remove(ref.key);
-                    currentPixelCount -= ref.key.getPixelCount();
+            if (byteCount > maxByteCount) {
+                while ((ref = (ImageSoftReference) referenceQueue.poll()) != null) {
+                    // reference lost; the entry may already have been replaced
+                    if (map.get(ref.key) == ref) {
+                        map.remove(ref.key);
+                        release(ref.byteCount);
+                    }
                 }
             }
 
             // remove old items till there is enough free space
-            if (currentPixelCount > maxPixelCount) {
-                final Iterator<Map.Entry<PixelsKey, ImageSoftReference>>
-                        mapIter = map.entrySet().iterator();
-                while ((currentPixelCount > maxPixelCount) && mapIter.hasNext()) {
-                    final Map.Entry<PixelsKey, ImageSoftReference> entry =
-                            mapIter.next();
+            if (byteCount > maxByteCount) {
+                Iterator<Map.Entry<PixelsKey, ImageSoftReference>> mapIter = map.entrySet().iterator();
+                while ((byteCount > maxByteCount) && mapIter.hasNext()) {
+                    Map.Entry<PixelsKey, ImageSoftReference> entry = mapIter.next();
                     mapIter.remove();
-                    final Image img = entry.getValue().get();
-                    if (img != null) img.flush();
-                    currentPixelCount -= entry.getValue().key.getPixelCount();
+                    ImageSoftReference r = entry.getValue();
+                    Image img = r.get();
+                    if (img != null) {
+                        img.flush();
+                    }
+                    release(r.byteCount);
+                    evictionCount.increment();
                 }
             }
 
             // finally put new in map
-            map.put(key, new ImageSoftReference(key, image, referenceQueue));
-        } finally {
-            lock.writeLock().unlock();
+            map.put(key, new ImageSoftReference(key, newByteCount, image, referenceQueue));
+        }
+
+        public synchronized void flush() {
+            for (ImageSoftReference ref : map.values()) {
+                currentByteCount.addAndGet(-ref.byteCount);
+            }
+            map.clear();
+            byteCount = 0;
+        }
+
+        private void release(long count) {
+            byteCount -= count;
+            currentByteCount.addAndGet(-count);
         }
     }
 
     public interface PixelsKey {
 
         int getPixelCount();
+
+        /**
+         * Return the number of bytes used by the image associated with this key. The default implementation assumes
+         * four bytes per pixel.
+         */
+        default long getByteCount() {
+            return 4L * getPixelCount();
+        }
     }
 
     private static class ImageSoftReference extends SoftReference<Image> {
 
         final PixelsKey key;
+        final long byteCount;
 
-        ImageSoftReference(PixelsKey key, Image referent, ReferenceQueue<? super Image> q) {
+        ImageSoftReference(PixelsKey key, long byteCount, Image referent, ReferenceQueue<? super Image> q) {
             super(referent, q);
             this.key = key;
+            this.byteCount = byteCount;
         }
     }
 }
@@ -3574,6 +3574,7 @@ public class AquaFileChooserUI extends BasicFileChooserUI implements AquaCompone
         }
 
         if (model != null) {
+            model.startValidation();
             model.setAutoValidate(UIManager.getBoolean("FileChooser.autovalidate"));
             TreePath subtreePath = first(activeView.getSelection());
             TreePath fullPath = subtreeModel.toFullPath(subtreePath);
@@ -8,6 +8,7 @@
 
 package org.violetlib.aqua.fc;
 
+import org.jetbrains.annotations.Nullable;
 import org.violetlib.aqua.DynamicIcon;
 
 /**
@@ -15,7 +16,39 @@ import org.violetlib.aqua.DynamicIcon;
  */
 public class AquaFileIcon extends DynamicIcon {
 
+    // Not synchronized on this icon, because the request may install images while holding its own lock.
+    private volatile @Nullable FileIconService.Request request;
+
     public AquaFileIcon(int width, int height) {
         super(width, height);
     }
+
+    /**
+     * Specify the request that installs images into this icon.
+     */
+    public void setRequest(@Nullable FileIconService.Request request) {
+        this.request = request;
+    }
+
+    /**
+     * Determine whether the request that installs images into this icon has work pending.
+     */
+    public boolean isRequestPending() {
+        FileIconService.Request r = request;
+        return r != null && r.isPending();
+    }
+
+    /**
+     * Cancel the request that installs images into this icon, if it has work pending.
+     * @return true if a pending request was cancelled. In that case, the icon may not be complete.
+     */
+    public boolean cancelRequest() {
+        FileIconService.Request r = request;
+        if (r != null && r.isPending()) {
+            r.cancel();
+            request = null;
+            return true;
+        }
+        return false;
+    }
 }
@@ -29,10 +29,45 @@ public class AquaFileIcons {
     public static @NotNull AquaFileIcon getThumbnail(@NotNull File f)
     {
         AquaFileIcon result = new AquaFileIcon(16, 16);
-        fis.requestIcon(f, 28, 2, (icon, quality) -> result.installIcon(icon));
+        requestThumbnail(f, result);
         return result;
     }
 
+    /**
+     * Request a thumbnail icon for a file, to be installed into an existing icon. This method is used to request the
+     * icon again after a request has been cancelled.
+     */
+    public static void requestThumbnail(@NotNull File f, @NotNull AquaFileIcon result)
+    {
+        FileIconService.Request r = fis.requestIcon(f, 28, 2, (icon, quality) -> result.installIcon(icon));
+        result.setRequest(r);
+    }
+
+    /**
+     * Return the number of pending icon requests that have been cancelled, typically because the file is no longer
+     * displayed.
+     */
+    public static long getCancelledRequestCount()
+    {
+        return FileIconServiceImplBase.getCancelledRequestCount();
+    }
+
+    /**
+     * Return the number of icon renderings that were avoided by cancelling requests.
+     */
+    public static long getAvoidedRenderCount()
+    {
+        return FileIconServiceImplBase.getAvoidedRenderCount();
+    }
+
+    /**
+     * Return the number of icon renderings that completed after their request was cancelled.
+     */
+    public static long getWastedRenderCount()
+    {
+        return FileIconServiceImplBase.getWastedRenderCount();
+    }
+
     public static @NotNull AquaFileIcon getPreview(@NotNull File f)
     {
         AquaFileIcon result = new AquaFileIcon(1600, 1600);
@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import javax.swing.*;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -58,13 +59,24 @@ public class CatalinaFileIconServiceImpl
         installGenericFileIcon(f, request);
 
         if (OSXFile.isImageFile(f)) {
-            long upcallID = upcallRegistry.registerRequest(request);
-            if (debugFlag) {
-                Utils.logDebug("Thumbnail request #" + upcallID + ": " + f.getAbsolutePath());
+            // Use a cached thumbnail, if available. Otherwise, cache the thumbnails that are delivered.
+            FileIconCache.Key key = FileIconCache.createFileKey(f, size, scale, "Thumbnail");
+            if (key != null) {
+                FileIconCache.CachedIcon icon = FileIconCache.getInstance().get(key);
+                if (icon != null) {
+                    request.installIcon(icon.getIcon(), icon.getQuality());
+                }
+                request.setCacheKey(key);
+            }
+            if (!request.isComplete()) {
+                long upcallID = upcallRegistry.registerRequest(request);
+                if (debugFlag) {
+                    Utils.logDebug("Thumbnail request #" + upcallID + ": " + f.getAbsolutePath());
+                }
+                installQuickLookFileIcon(f, size, scale, upcallID);
             }
-            installQuickLookFileIcon(f, size, scale, upcallID);
         } else {
-            dispatcher.dispatch(() -> {
+            dispatch(dispatcher, request, () -> {
                 installLaunchServicesFileIcon(f, size, scale, request, FileIconService.ICON_TYPE);
             });
         }
@@ -74,6 +86,28 @@ public class CatalinaFileIconServiceImpl
 
     private void installLaunchServicesFileIcon(@NotNull File f, int size, float scale,
                                                @NotNull RequestImpl request, int priority)
+    {
+        // The icon of an ordinary file depends only on its type, unless the file has a custom icon. Other files, such
+        // as folders and applications, may have custom icons.
+        FileIconCache.Key key = FileIconCache.createTypeKey(f, size, scale, "Launch Services");
+        if (key == null) {
+            key = FileIconCache.createFileKey(f, size, scale, "Launch Services");
+        }
+        if (key != null) {
+            FileIconCache.CachedIcon icon = FileIconCache.getInstance().getOrRender(key, priority,
+                    () -> renderLaunchServicesFileIcon(f, size));
+            if (icon != null) {
+                request.installIcon(icon.getIcon(), icon.getQuality());
+            }
+        } else {
+            ImageIcon icon = renderLaunchServicesFileIcon(f, size);
+            if (icon != null) {
+                request.installIcon(icon, priority);
+            }
+        }
+    }
+
+    private @Nullable ImageIcon renderLaunchServicesFileIcon(@NotNull File f, int size)
     {
         String path = f.getAbsolutePath();
         int[][] buffers = new int[2][];
@@ -88,8 +122,9 @@ public class CatalinaFileIconServiceImpl
                 Utils.logDebug("Rendered " + type + " image for " + path);
             }
             Image image = AquaMultiResolutionImage.createImage(size, size, buffers[0], buffers[1]);
-            request.installImage(image, priority);
+            return new ImageIcon(image);
         }
+        return null;
     }
 
     private void installQuickLookFileIcon(@NotNull File f, int size, float scale, long upcallID)
@@ -17,6 +17,7 @@ import java.awt.event.MouseListener;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import javax.swing.*;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
@@ -39,6 +40,7 @@ public class ColumnViewImpl extends ColumnView {
     private final MouseListener mouseListener;
     private final TreeSelectionListener treeSelectionListener;
     private boolean isActive;
+    private FileSystemTreeModel displayedNodesModel;  // the model last informed of the displayed nodes
 
     public ColumnViewImpl(JFileChooser fc) {
         this.fc = fc;
@@ -88,6 +90,9 @@ public class ColumnViewImpl extends ColumnView {
 
         setLayout(new BorderLayout());
         add(browserScrollPane);
+
+        browser.addVisibleRowsListener(e -> updateDisplayedNodes());
+        browserScrollPane.getViewport().addChangeListener(e -> updateDisplayedNodes());
     }
 
     protected class ColumnViewBrowser extends AquaFileChooserBrowser {
@@ -140,6 +145,7 @@ public class ColumnViewImpl extends ColumnView {
             browser.removeMouseListener(mouseListener);
             browser.removeTreeSelectionListener(treeSelectionListener);
         }
+        updateDisplayedNodes();
     }
 
     @Override
@@ -147,6 +153,27 @@ public class ColumnViewImpl extends ColumnView {
         browser.setModel(m);
         FileSystemTreeModel fullModel = (FileSystemTreeModel) m.getTargetModel();
         browser.setPrototypeCellValue(fullModel.getPrototypeValue());
+        updateDisplayedNodes();
+    }
+
+    /**
+     * Informs the model of the nodes displayed by this view, so that their icons are obtained first.
+     */
+    protected void updateDisplayedNodes() {
+        java.util.List<Object> visibleNodes = new ArrayList<>();
+        java.util.List<Object> marginNodes = new ArrayList<>();
+        FileSystemTreeModel fullModel = null;
+        if (isActive && browser.getModel() instanceof SubtreeTreeModel) {
+            fullModel = (FileSystemTreeModel) ((SubtreeTreeModel) browser.getModel()).getTargetModel();
+            browser.getDisplayedValues(FileSystemTreeModel.DISPLAY_MARGIN, visibleNodes, marginNodes);
+        }
+        if (displayedNodesModel != null && displayedNodesModel != fullModel) {
+            displayedNodesModel.setDisplayedNodes(this, Collections.emptyList(), Collections.emptyList());
+        }
+        displayedNodesModel = fullModel;
+        if (fullModel != null) {
+            fullModel.setDisplayedNodes(this, visibleNodes, marginNodes);
+        }
     }
 
     @Override
@@ -11,7 +11,11 @@
 
 package org.violetlib.aqua.fc;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.violetlib.aqua.AquaUtils;
 
 /**
  * Processes Runnable objects concurrently on a pool of processor threads.
@@ -19,6 +23,19 @@ import java.util.LinkedList;
  * necesseraly the same in which they were added to the dispatcher.
  * There is one thread pool per instance.
  * <p>
+ * Processor threads are reused. A processor thread that has no work
+ * waits for a few seconds for more work before it terminates.
+ * Processor threads are daemon threads, so that an idle dispatcher
+ * does not delay the exit of the Java VM. Dispatched work is expected
+ * to be disposable: it may be abandoned when the VM exits.
+ * If the system property {@code VAqua.useVirtualThreads} is
+ * {@code true} and the Java runtime supports virtual threads, the
+ * processor threads are virtual threads.
+ * <p>
+ * Each dispatched Runnable object is represented by a Future, which
+ * can be used to cancel it. A Runnable object that is cancelled before
+ * a processor thread takes it from the queue is not run.
+ * <p>
  * Design pattern used: Acceptor
  * Role in design pattern: EventCollector and EventProcessor
  * <p>
@@ -55,11 +72,27 @@ public class ConcurrentDispatcher {
      * The queue stores the events until they
      * can be processed by a processor thread.
      */
-    private final LinkedList queue = new LinkedList();
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
     /**
      * Number of concurrent threads.
      */
     private int threadCount;
+    /**
+     * Number of threads waiting for work.
+     */
+    private int idleThreadCount;
+    /**
+     * Set when the dispatcher has been disposed.
+     */
+    private boolean isDisposed;
+    /**
+     * The time that an idle processor thread waits for work
+     * before it terminates.
+     */
+    private static final long KEEP_ALIVE_MILLIS = 5000;
+
+    private static final boolean useVirtualThreads
+            = "true".equals(AquaUtils.getProperty("VAqua.useVirtualThreads"));
     /**
      * Maximum number of concurrent threads.
      */
@@ -127,64 +160,97 @@ public class ConcurrentDispatcher {
     /**
      * Enqueues the Runnable object, and executes
      * it on a processor thread.
+     *
+     * @return a Future that can be used to cancel the Runnable object.
      */
-    public void dispatch(Runnable runner) {
-        dispatch(runner, false);
+    public Future<?> dispatch(Runnable runner) {
+        return dispatch(runner, false);
     }
 
     /**
      * Enqueues the Runnable object, and executes
      * it on a processor thread.
+     *
+     * @param isLIFO If true, the Runnable object is executed before
+     *               the Runnable objects that are already queued.
+     * @return a Future that can be used to cancel the Runnable object.
      */
-    public void dispatch(Runnable runner, boolean isLIFO) {
-        isLIFO = false;
+    public Future<?> dispatch(Runnable runner, boolean isLIFO) {
+        Task task = new Task(runner);
         synchronized (queue) {
-            if (threadCount < maxThreadCount) {
+            if (isDisposed) {
+                task.cancel(false);
+                return task;
+            }
+            if (idleThreadCount > 0
+                    || threadCount < maxThreadCount
+                    || blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
                 if (isLIFO) {
-                    queue.addFirst(runner);
+                    queue.addFirst(task);
                 } else {
-                    queue.addLast(runner);
+                    queue.addLast(task);
                 }
-
-                Thread processor = new Thread(this + " Processor") {
-
-                    public void run() {
-                        processEvents();
-                    }
-                };
-                threadCount++;
-
-
-                // The processor thread must not be a daemon,
-                // or else the Java VM might stop before
-                // all runnables have been processed.
-                try {
-                    processor.setDaemon(false);
-                } catch (SecurityException e) {
-                    e.printStackTrace();
+                if (queue.size() > idleThreadCount && threadCount < maxThreadCount) {
+                    startProcessor();
                 }
-                try {
-                    processor.setPriority(priority);
-                } catch (SecurityException e) {
-                    e.printStackTrace();
+                if (idleThreadCount > 0) {
+                    queue.notify();
                 }
+                return task;
+            }
+        }
 
-                processor.start();
-                return;
+        //implicit: if (threadCount >= maxThreadCount && blockingPolicy == RUN_WHEN_BLOCKED)
+        task.run();
+        return task;
+    }
 
-            } else if (blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
-                if (isLIFO) {
-                    queue.addFirst(runner);
-                } else {
-                    queue.addLast(runner);
-                }
+    /**
+     * Starts a processor thread. The caller must hold the queue lock.
+     */
+    private void startProcessor() {
+        Runnable r = new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        };
+        String name = this + " Processor";
+        Thread processor = useVirtualThreads ? createVirtualThread(r, name) : null;
+        if (processor == null) {
+            processor = new Thread(r, name);
 
-                return;
+            // Processor threads outlive their work by the keep alive time.
+            // Dispatchers that are never disposed must not hold the
+            // Java VM open during that time.
+            try {
+                processor.setDaemon(true);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+            try {
+                processor.setPriority(priority);
+            } catch (SecurityException e) {
+                e.printStackTrace();
             }
         }
+        threadCount++;
+        processor.start();
+    }
 
-        //implicit: if (threadCount >= maxThreadCount && blockingPolicy == RUN_WHEN_BLOCKED)
-        runner.run();
+    /**
+     * Creates a virtual thread, if supported by the Java runtime.
+     *
+     * @return the unstarted thread, or null if virtual threads are not supported.
+     */
+    private static Thread createVirtualThread(Runnable r, String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, r);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
     }
 
     public void stop() {
@@ -194,33 +260,83 @@ public class ConcurrentDispatcher {
     /**
      * This method dequeues all Runnable objects from the
      * queue and executes them. The method returns
-     * when the queue is empty.
+     * when the queue has been empty for the keep alive time,
+     * or when the dispatcher is disposed.
      */
     protected void processEvents() {
-        Object runner;
-        loop:
+        Task task;
         while (true) {
             synchronized (queue) {
-                if (queue.isEmpty()) {
+                task = nextTask();
+                if (task == null) {
                     threadCount--;
-                    break loop;
+                    return;
+                }
+            }
+            task.run();
+            // Clear an interrupt caused by cancelling the task
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Returns the next task to run, waiting for one if necessary.
+     * The caller must hold the queue lock.
+     *
+     * @return the task, or null if the processor thread should terminate.
+     */
+    private Task nextTask() {
+        long deadline = System.currentTimeMillis() + KEEP_ALIVE_MILLIS;
+        while (true) {
+            Task task;
+            while ((task = queue.pollFirst()) != null) {
+                if (!task.isCancelled()) {
+                    return task;
                 }
-                runner = queue.removeFirst();
             }
+            long remaining = deadline - System.currentTimeMillis();
+            if (isDisposed || remaining <= 0 || threadCount > maxThreadCount) {
+                return null;
+            }
+            idleThreadCount++;
             try {
-                ((Runnable) runner).run();
-            } catch (Throwable e) {
-                e.printStackTrace();
+                queue.wait(remaining);
+            } catch (InterruptedException e) {
+                return null;
+            } finally {
+                idleThreadCount--;
             }
         }
     }
 
     /**
      * Disposes the dispatcher and all associated processes.
+     * Queued Runnable objects are cancelled, and idle processor threads
+     * terminate. Runnable objects dispatched later are not run.
      */
     public void dispose() {
         synchronized (queue) {
+            isDisposed = true;
+            for (Task task : queue) {
+                task.cancel(false);
+            }
             queue.clear();
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * A dispatched Runnable object.
+     */
+    private static class Task extends FutureTask<Object> {
+        public Task(Runnable runner) {
+            super(runner, null);
+        }
+
+        @Override
+        protected void setException(Throwable e) {
+            e.printStackTrace();
+            super.setException(e);
         }
     }
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.swing.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Watches directories for changes using a {@link WatchService}. A client registers a directory along with an action
+ * to perform when the contents of the directory change, that is, when a file is added to, removed from (including
+ * by renaming), or modified in the directory. The action is performed on the event dispatch thread. Changes that
+ * arrive in quick succession are reported once. The action should be inexpensive, because a file that is written
+ * continuously causes repeated notifications.
+ * <p>
+ * The number of watched directories is limited, because watches may be a limited system resource. When the limit is
+ * exceeded, the directory that was least recently registered or changed is no longer watched and its registrations
+ * become invalid. A registration also becomes invalid if the directory is deleted or the watcher is closed. A client
+ * should treat the contents of a directory whose registration is invalid as it would if the directory were not
+ * watched.
+ * <p>
+ * Watching is not supported if the platform watch service polls the file system, as it does on macOS, because
+ * changes would then be noticed later than by the time based validation that watching replaces.
+ */
+
+public class DirectoryWatcher {
+
+    /**
+     * A registration of interest in a directory.
+     */
+
+    public final class Registration {
+        private final @NotNull Path path;
+        private final @NotNull Runnable action;
+        private volatile boolean isValid = true;
+
+        private Registration(@NotNull Path path, @NotNull Runnable action) {
+            this.path = path;
+            this.action = action;
+        }
+
+        /**
+         * Determine whether changes to the directory are being reported.
+         */
+
+        public boolean isValid() {
+            return isValid;
+        }
+
+        /**
+         * Stop reporting changes to the directory for this registration.
+         */
+
+        public void cancel() {
+            unregister(this);
+        }
+    }
+
+    private static class WatchedDirectory {
+        final @NotNull WatchKey key;
+        final @NotNull List<Registration> registrations = new ArrayList<>(1);
+
+        WatchedDirectory(@NotNull WatchKey key) {
+            this.key = key;
+        }
+    }
+
+    // The delay used to combine changes that arrive in quick succession
+    private static final long COALESCE_MILLIS = 200;
+
+    private final @Nullable WatchService watchService;
+    private final int maxDirectoryCount;
+    private final LinkedHashMap<Path,WatchedDirectory> directories = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<WatchKey,Path> paths = new HashMap<>();
+    private boolean isClosed;
+
+    /**
+     * Create a directory watcher.
+     * @param maxDirectoryCount The maximum number of directories to watch at one time.
+     */
+
+    public DirectoryWatcher(int maxDirectoryCount) {
+        this.maxDirectoryCount = maxDirectoryCount;
+        this.watchService = createWatchService();
+        if (watchService != null) {
+            Thread t = new Thread(this::processEvents, "VAqua Directory Watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private static @Nullable WatchService createWatchService() {
+        try {
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            if (ws.getClass().getName().endsWith("PollingWatchService")) {
+                ws.close();
+                return null;
+            }
+            return ws;
+        } catch (IOException | UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determine whether directories can be watched.
+     */
+
+    public boolean isSupported() {
+        return watchService != null;
+    }
+
+    /**
+     * Register interest in a directory. This method may perform I/O and may be called on any thread.
+     * @param dir The directory.
+     * @param action The action to perform on the event dispatch thread when the contents of the directory change.
+     * @return the registration, or null if the directory cannot be watched.
+     */
+
+    public @Nullable Registration register(@NotNull File dir, @NotNull Runnable action) {
+        if (watchService == null) {
+            return null;
+        }
+        Path path;
+        try {
+            path = dir.toPath().toAbsolutePath();
+        } catch (RuntimeException ex) {
+            return null;
+        }
+        synchronized (this) {
+            if (isClosed) {
+                return null;
+            }
+            WatchedDirectory d = directories.get(path);
+            if (d == null || !d.key.isValid()) {
+                WatchKey key;
+                try {
+                    key = path.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                } catch (IOException | RuntimeException ex) {
+                    return null;
+                }
+                if (d != null) {
+                    paths.remove(d.key);
+                    invalidate(d);
+                }
+                d = new WatchedDirectory(key);
+                directories.put(path, d);
+                paths.put(key, path);
+                evict();
+            }
+            Registration r = new Registration(path, action);
+            d.registrations.add(r);
+            return r;
+        }
+    }
+
+    /**
+     * Return the number of directories being watched.
+     */
+
+    public synchronized int getDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Stop watching all directories. All registrations become invalid.
+     */
+
+    public void close() {
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            for (WatchedDirectory d : directories.values()) {
+                invalidate(d);
+            }
+            directories.clear();
+            paths.clear();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private synchronized void unregister(@NotNull Registration r) {
+        r.isValid = false;
+        WatchedDirectory d = directories.get(r.path);
+        if (d != null && d.registrations.remove(r) && d.registrations.isEmpty()) {
+            directories.remove(r.path);
+            paths.remove(d.key);
+            d.key.cancel();
+        }
+    }
+
+    private void evict() {
+        Iterator<WatchedDirectory> it = directories.values().iterator();
+        while (directories.size() > maxDirectoryCount && it.hasNext()) {
+            WatchedDirectory d = it.next();
+            it.remove();
+            paths.remove(d.key);
+            invalidate(d);
+        }
+    }
+
+    private static void invalidate(@NotNull WatchedDirectory d) {
+        d.key.cancel();
+        for (Registration r : d.registrations) {
+            r.isValid = false;
+        }
+    }
+
+    private void processEvents() {
+        assert watchService != null;
+        try {
+            for (;;) {
+                Set<WatchKey> keys = new LinkedHashSet<>();
+                keys.add(watchService.take());
+                long deadline = System.currentTimeMillis() + COALESCE_MILLIS;
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                    WatchKey key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        keys.add(key);
+                    }
+                }
+                List<Runnable> actions = new ArrayList<>();
+                for (WatchKey key : keys) {
+                    // The events are not examined. Any event, including an overflow, means that the directory
+                    // has changed.
+                    key.pollEvents();
+                    boolean isValid = key.reset();
+                    collectActions(key, isValid, actions);
+                }
+                if (!actions.isEmpty()) {
+                    SwingUtilities.invokeLater(() -> {
+                        for (Runnable action : actions) {
+                            action.run();
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // the watcher has been closed
+        }
+    }
+
+    private synchronized void collectActions(@NotNull WatchKey key, boolean isValid, @NotNull List<Runnable> actions) {
+        Path path = paths.get(key);
+        if (path == null) {
+            return;
+        }
+        WatchedDirectory d = directories.get(path);
+        if (d == null || d.key != key) {
+            return;
+        }
+        for (Registration r : d.registrations) {
+            actions.add(r.action);
+        }
+        if (!isValid) {
+            // The directory is no longer accessible, probably deleted
+            directories.remove(path);
+            paths.remove(key);
+            invalidate(d);
+        }
+    }
+}
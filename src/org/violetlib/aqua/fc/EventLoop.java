@@ -8,7 +8,8 @@
 
 package org.violetlib.aqua.fc;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 
 /**
  * An EventLoop can process events on a separate worker thread.
@@ -29,6 +30,12 @@ import java.util.LinkedList;
  * the same sequence as they have been collected and that only one
  * thread is used to process the events.
  * <p>
+ * Events are collected into lanes. The events of a more urgent lane
+ * are processed before the events of a less urgent lane, for example,
+ * work for visible rows before work that prefetches data. Within a
+ * lane, events are processed in the sequence in which they were
+ * collected (or the reverse sequence, if the EventLoop is LIFO).
+ * <p>
  * <b>Usage</b>
  * <p>
  * This is an abstract class. It does all the queue handling, but
@@ -61,9 +68,58 @@ import java.util.LinkedList;
  * @version $Id$
  */
 public abstract class EventLoop {
+    /**
+     * The lane for events whose results are needed for visible rows.
+     */
+    public static final int LANE_VISIBLE = 0;
+    /**
+     * The lane for events collected without specifying a lane.
+     */
+    public static final int LANE_DEFAULT = 1;
+    /**
+     * The lane for events that prefetch data that may be needed later.
+     */
+    public static final int LANE_PREFETCH = 2;
+
+    private static final int LANE_COUNT = 3;
+
+    /**
+     * An event in the queue. An entry that has been superseded by an
+     * entry in a more urgent lane remains in its lane, marked as
+     * removed, until it reaches the head of the lane.
+     */
+    private static class Entry {
+        final Object event;
+        final int lane;
+        final long collectTime;
+        boolean isRemoved;
+
+        Entry(Object event, int lane, long collectTime) {
+            this.event = event;
+            this.lane = lane;
+            this.collectTime = collectTime;
+        }
+    }
+
     private Thread eventProcessor;
     private int threadPriority;
-    private final LinkedList eventQueue = new LinkedList();
+    /**
+     * The event queue, which also serves as the lock for the queue state.
+     */
+    private final ArrayDeque<Entry>[] eventQueue;
+    /**
+     * The queued entry for each event collected while coalescing.
+     */
+    private final HashMap<Object,Entry> pendingEvents = new HashMap<>();
+    /**
+     * The number of queued entries that have not been removed.
+     */
+    private int queueDepth;
+    private int peakQueueDepth;
+    private long processedCount;
+    private long coalescedCount;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
     /**
      * Indicates whether multiple events will be coalesced
      * by the event processor or not.
@@ -91,25 +147,69 @@ public abstract class EventLoop {
      *
      * @param priority The Thread priority of the event processor.
      */
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public EventLoop(int priority) {
         this.threadPriority = priority;
+        eventQueue = new ArrayDeque[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            eventQueue[i] = new ArrayDeque<>();
+        }
     }
     /**
-     * Collects an event and puts it into the event queue
-     * for later processing.
+     * Collects an event and puts it into the default lane of the event
+     * queue for later processing.
      *
      * @param event The event to be put into the queue.
      */
     protected void collectEvent(Object event) {
+        collectEvent(event, LANE_DEFAULT);
+    }
+    /**
+     * Collects an event and puts it into the specified lane of the event
+     * queue for later processing.
+     * <p>
+     * If the EventLoop coalesces events and an equal event is pending in
+     * the same lane or a more urgent lane, the event is discarded. If an
+     * equal event is pending in a less urgent lane, that event is moved
+     * to the specified lane.
+     *
+     * @param event The event to be put into the queue.
+     * @param lane The lane: {@link #LANE_VISIBLE}, {@link #LANE_DEFAULT},
+     * or {@link #LANE_PREFETCH}.
+     */
+    protected void collectEvent(Object event, int lane) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            throw new IllegalArgumentException("Invalid lane: " + lane);
+        }
         synchronized(eventQueue) {
-            if (! isCoalesce || ! eventQueue.contains(event)) {
-                if (isLIFO) {
-                    eventQueue.addFirst(event);
-                } else {
-                    eventQueue.addLast(event);
+            long now = System.nanoTime();
+            if (isCoalesce) {
+                Entry pending = pendingEvents.get(event);
+                if (pending != null) {
+                    coalescedCount++;
+                    if (pending.lane <= lane) {
+                        return;
+                    }
+                    // Promote the event, retaining its collection time
+                    pending.isRemoved = true;
+                    queueDepth--;
+                    now = pending.collectTime;
                 }
-                if (isAlive) startProcessor();
             }
+            Entry entry = new Entry(event, lane, now);
+            if (isCoalesce) {
+                pendingEvents.put(event, entry);
+            }
+            if (isLIFO) {
+                eventQueue[lane].addFirst(entry);
+            } else {
+                eventQueue[lane].addLast(entry);
+            }
+            queueDepth++;
+            if (queueDepth > peakQueueDepth) {
+                peakQueueDepth = queueDepth;
+            }
+            if (isAlive) startProcessor();
         }
     }
 
@@ -182,7 +282,69 @@ public abstract class EventLoop {
      */
     public void clear() {
         synchronized(eventQueue) {
-            eventQueue.clear();
+            for (ArrayDeque<Entry> q : eventQueue) {
+                q.clear();
+            }
+            pendingEvents.clear();
+            queueDepth = 0;
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be processed.
+     */
+    public int getQueueDepth() {
+        synchronized(eventQueue) {
+            return queueDepth;
+        }
+    }
+
+    /**
+     * Returns the largest number of events that have been waiting to be
+     * processed at one time.
+     */
+    public int getPeakQueueDepth() {
+        synchronized(eventQueue) {
+            return peakQueueDepth;
+        }
+    }
+
+    /**
+     * Returns the number of events that have been processed.
+     */
+    public long getProcessedEventCount() {
+        synchronized(eventQueue) {
+            return processedCount;
+        }
+    }
+
+    /**
+     * Returns the number of events that were coalesced with a pending
+     * event.
+     */
+    public long getCoalescedEventCount() {
+        synchronized(eventQueue) {
+            return coalescedCount;
+        }
+    }
+
+    /**
+     * Returns the average time in milliseconds between the collection
+     * of an event and the start of its processing.
+     */
+    public double getAverageLatencyMillis() {
+        synchronized(eventQueue) {
+            return processedCount > 0 ? totalLatencyNanos / (processedCount * 1e6) : 0;
+        }
+    }
+
+    /**
+     * Returns the longest time in milliseconds between the collection
+     * of an event and the start of its processing.
+     */
+    public double getMaxLatencyMillis() {
+        synchronized(eventQueue) {
+            return maxLatencyNanos / 1e6;
         }
     }
 
@@ -235,11 +397,22 @@ public abstract class EventLoop {
         Object event;
         while (true) {
             synchronized(eventQueue) {
-                if (eventQueue.isEmpty() || ! isAlive) {
+                Entry entry = isAlive ? nextEntry() : null;
+                if (entry == null) {
                     eventProcessor = null;
                     return;
                 }
-                event = eventQueue.removeFirst();
+                event = entry.event;
+                if (pendingEvents.get(event) == entry) {
+                    pendingEvents.remove(event);
+                }
+                queueDepth--;
+                long latency = System.nanoTime() - entry.collectTime;
+                processedCount++;
+                totalLatencyNanos += latency;
+                if (latency > maxLatencyNanos) {
+                    maxLatencyNanos = latency;
+                }
             }
             try {
                 processEvent(event);
@@ -248,4 +421,22 @@ public abstract class EventLoop {
             }
         }
     }
+
+    /**
+     * Removes the next event to be processed from the queue.
+     * The caller must hold the queue lock.
+     *
+     * @return the entry for the event, or null if the queue is empty.
+     */
+    private Entry nextEntry() {
+        for (ArrayDeque<Entry> q : eventQueue) {
+            Entry entry;
+            while ((entry = q.pollFirst()) != null) {
+                if (!entry.isRemoved) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable snapshot of the attributes of a file that are displayed and sorted in a file chooser. Snapshots are
+ * read in bulk by a worker thread when a directory is validated, so that comparing and rendering files does not
+ * access the file system. The kind of a file is not included, because obtaining it is much more expensive than
+ * reading the other attributes, and it is needed only when kinds are displayed or sorted.
+ */
+
+public final class FileAttributeSnapshot {
+
+    private final boolean isKnown;
+    private final long lastModified;
+    private final long length;
+    private final boolean isDirectory;
+    private final boolean isRegularFile;
+
+    private FileAttributeSnapshot(boolean isKnown,
+                                  long lastModified,
+                                  long length,
+                                  boolean isDirectory,
+                                  boolean isRegularFile) {
+        this.isKnown = isKnown;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.isDirectory = isDirectory;
+        this.isRegularFile = isRegularFile;
+    }
+
+    /**
+     * Read the attributes of a file. This method performs I/O and may be called on any thread.
+     * @param file The file, which may be an alias.
+     * @param resolvedFile The resolved file. The length is that of the file. The other attributes are those of the
+     *                     resolved file.
+     * @return the snapshot. If the attributes cannot be read, the snapshot is one whose attributes are not known.
+     */
+
+    public static @NotNull FileAttributeSnapshot read(@NotNull File file,
+                                                      @NotNull File resolvedFile) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(resolvedFile.toPath(), BasicFileAttributes.class);
+            long length;
+            if (a.isDirectory()) {
+                length = -1;
+            } else if (resolvedFile.equals(file)) {
+                length = a.size();
+            } else {
+                length = file.length();
+            }
+            return new FileAttributeSnapshot(true, a.lastModifiedTime().toMillis(), length,
+                    a.isDirectory(), a.isRegularFile());
+        } catch (IOException | RuntimeException ex) {
+            return unknown();
+        }
+    }
+
+    /**
+     * Return a snapshot for a file whose attributes are not known.
+     */
+
+    public static @NotNull FileAttributeSnapshot unknown() {
+        return new FileAttributeSnapshot(false, 0, -1, false, false);
+    }
+
+    /**
+     * Indicate whether the attributes of the file were read.
+     * @return true if the attributes were read, false if they are not known.
+     */
+
+    public boolean isKnown() {
+        return isKnown;
+    }
+
+    /**
+     * Return the modification time of the file, in milliseconds since the epoch.
+     * @return the modification time, or zero if not known. Zero is also a valid modification time; use
+     * {@link #isKnown} to distinguish the two.
+     */
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Return the length of the file.
+     * @return the length, or -1 if the file is a directory or the length is not known.
+     */
+
+    public long getLength() {
+        return length;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public boolean isRegularFile() {
+        return isRegularFile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileAttributeSnapshot)) {
+            return false;
+        }
+        FileAttributeSnapshot other = (FileAttributeSnapshot) o;
+        return isKnown == other.isKnown
+                && lastModified == other.lastModified
+                && length == other.length
+                && isDirectory == other.isDirectory
+                && isRegularFile == other.isRegularFile;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(isKnown, lastModified, length, isDirectory, isRegularFile);
+    }
+}
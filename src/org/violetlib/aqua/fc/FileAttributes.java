@@ -9,6 +9,7 @@
 package org.violetlib.aqua.fc;
 
 import java.io.File;
+import java.util.concurrent.Future;
 import javax.swing.*;
 import javax.swing.filechooser.FileView;
 import javax.swing.plaf.FileChooserUI;
@@ -72,13 +73,35 @@ public class FileAttributes {
      * @return the icon.
      */
     public @NotNull AquaFileIcon getIcon(@NotNull File f) {
+        AquaFileIcon icon = new AquaFileIcon(16, 16);
+        requestIcon(f, icon);
+        return icon;
+    }
+
+    /**
+     * Request the icon for a file in a file chooser, to be installed into an existing icon. The most recently
+     * requested icons are obtained first.
+     * @param f The file.
+     * @param icon The icon.
+     */
+    public void requestIcon(@NotNull File f, @NotNull AquaFileIcon icon) {
         if (canGetFileIconDirectly()) {
-            return AquaFileIcons.getThumbnail(f);
+            AquaFileIcons.requestThumbnail(f, icon);
+            return;
         }
-        AquaFileIcon icon = new AquaFileIcon(16, 16);
         FileIconUpdater updater = new FileIconUpdater(fc, f, icon);
-        dispatcher.dispatch(updater);
-        return icon;
+        Future<?> future = dispatcher.dispatch(updater, true);
+        icon.setRequest(new FileIconService.Request() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+
+            @Override
+            public boolean isPending() {
+                return !future.isDone();
+            }
+        });
     }
 
     private static class FileIconUpdater
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.aqua.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import javax.swing.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cache of rendered file icons, shared by the file icon service implementations. The cache has two tiers:
+ * <ul>
+ * <li>Type icons are shared by all ordinary files with the same file name extension, except files that may have a
+ * custom icon.</li>
+ * <li>File icons, such as custom icons and thumbnails, are specific to one file. They are identified by the path,
+ * modification time, and length of the file, so a file that has changed does not match the icons of its earlier
+ * version. Those icons are eventually discarded as unused.</li>
+ * </ul>
+ * Both tiers are identified also by the requested size and display scale. Each tier is limited in size: the type icon
+ * tier by the number of icons and the number of pixels, the file icon tier by the number of pixels. Least recently
+ * used icons are discarded when a limit is exceeded. Icons that would use a large fraction of the pixel budget of
+ * their tier are not cached.
+ * <p>
+ * The cache does not render icons. It is independent of the native renderers and may be used on any thread.
+ */
+
+public final class FileIconCache {
+
+    /**
+     * Renders an icon when the icon is not cached.
+     */
+
+    public interface Renderer {
+        /**
+         * Render the icon.
+         * @return the icon, or null if the icon could not be rendered.
+         */
+        @Nullable ImageIcon render();
+    }
+
+    /**
+     * An icon and its quality level, as defined by {@link FileIconService}.
+     */
+
+    public static final class CachedIcon {
+        private final @NotNull ImageIcon icon;
+        private final int quality;
+
+        private CachedIcon(@NotNull ImageIcon icon, int quality) {
+            this.icon = icon;
+            this.quality = quality;
+        }
+
+        public @NotNull ImageIcon getIcon() {
+            return icon;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+    }
+
+    /**
+     * Identifies an icon in the cache.
+     */
+
+    public static final class Key {
+        private final boolean isType;
+        private final @NotNull String name;
+        private final @NotNull String source;
+        private final long lastModified;
+        private final long length;
+        private final int size;
+        private final float scale;
+        private final int hash;
+
+        private Key(boolean isType,
+                    @NotNull String name,
+                    @NotNull String source,
+                    long lastModified,
+                    long length,
+                    int size,
+                    float scale) {
+            this.isType = isType;
+            this.name = name;
+            this.source = source;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.size = size;
+            this.scale = scale;
+            this.hash = Objects.hash(isType, name, source, lastModified, length, size, scale);
+        }
+
+        /**
+         * Return an estimate of the number of pixels in an icon identified by this key.
+         */
+
+        int getPixelCount() {
+            long side = (long) Math.ceil(size * scale);
+            return (int) Math.min(Integer.MAX_VALUE, side * side);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return isType == other.isType
+                    && lastModified == other.lastModified
+                    && length == other.length
+                    && size == other.size
+                    && scale == other.scale
+                    && name.equals(other.name)
+                    && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final FileIconCache INSTANCE = new FileIconCache();
+
+    public static @NotNull FileIconCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Return the key for the type icon of a file. This method performs I/O.
+     * @param f The file.
+     * @param size The requested icon size (in points).
+     * @param scale The display scale.
+     * @param source Identifies the renderer.
+     * @return the key, or null if the file is not an ordinary file with a file name extension or if the file may have a
+     * custom icon. The icons of other files, such as folders, applications, and symbolic links, may be specific to the
+     * file.
+     */
+
+    public static @Nullable Key createTypeKey(@NotNull File f, int size, float scale, @NotNull String source) {
+        String name = f.getName();
+        int pos = name.lastIndexOf('.');
+        if (pos <= 0 || pos == name.length() - 1) {
+            return null;
+        }
+        try {
+            BasicFileAttributes a = Files.readAttributes(f.toPath(), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (!a.isRegularFile() || hasResourceFork(f)) {
+                return null;
+            }
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+        String extension = name.substring(pos + 1).toLowerCase(Locale.ROOT);
+        return new Key(true, extension, source, 0, 0, size, scale);
+    }
+
+    /**
+     * Determine whether a file has a resource fork. The Finder stores the custom icon of a file in its resource fork,
+     * so a file without a resource fork does not have a custom icon. This method performs I/O.
+     */
+
+    private static boolean hasResourceFork(@NotNull File f) {
+        return new File(f, "..namedfork/rsrc").length() > 0;
+    }
+
+    /**
+     * Return the key for an icon that is specific to a file. This method performs I/O.
+     * @param f The file.
+     * @param size The requested icon size (in points).
+     * @param scale The display scale.
+     * @param source Identifies the renderer.
+     * @return the key, or null if the attributes of the file could not be read.
+     */
+
+    public static @Nullable Key createFileKey(@NotNull File f, int size, float scale, @NotNull String source) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return new Key(false, f.getAbsolutePath(), source, a.lastModifiedTime().toMillis(), a.size(), size, scale);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private final LinkedHashMap<Key,CachedIcon> typeIcons = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Key,CachedIcon> fileIcons = new LinkedHashMap<>(256, 0.75f, true);
+    private final int maxTypeIconCount;
+    private final int maxTypePixelCount;
+    private final int maxTypeIconPixelCount;
+    private final int maxPixelCount;
+    private final int maxIconPixelCount;
+    private int currentTypePixelCount;
+    private int currentPixelCount;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Create a cache.
+     * @param maxTypeIconCount The maximum number of type icons.
+     * @param maxTypePixelCount The maximum number of pixels in type icons.
+     * @param maxPixelCount The maximum number of pixels in file icons.
+     */
+
+    public FileIconCache(int maxTypeIconCount, int maxTypePixelCount, int maxPixelCount) {
+        this.maxTypeIconCount = maxTypeIconCount;
+        this.maxTypePixelCount = maxTypePixelCount;
+        this.maxTypeIconPixelCount = maxTypePixelCount / 16;
+        this.maxPixelCount = maxPixelCount;
+        this.maxIconPixelCount = maxPixelCount / 16;
+    }
+
+    /**
+     * Create a cache whose type icons may use a quarter as many pixels as its file icons.
+     * @param maxTypeIconCount The maximum number of type icons.
+     * @param maxPixelCount The maximum number of pixels in file icons.
+     */
+
+    public FileIconCache(int maxTypeIconCount, int maxPixelCount) {
+        this(maxTypeIconCount, maxPixelCount / 4, maxPixelCount);
+    }
+
+    public FileIconCache() {
+        this(512, (16 * 1024 * 1024) / 4); // 16Mb of pixels, 4Mb for type icons
+    }
+
+    /**
+     * Return the cached icon for a key.
+     * @return the icon, or null if the icon is not cached.
+     */
+
+    public synchronized @Nullable CachedIcon get(@NotNull Key key) {
+        CachedIcon result = key.isType ? typeIcons.get(key) : fileIcons.get(key);
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    /**
+     * Cache an icon. An icon of lower quality than the cached icon is ignored.
+     */
+
+    public synchronized void put(@NotNull Key key, @NotNull ImageIcon icon, int quality) {
+        int pixelCount = key.getPixelCount();
+        if (key.isType) {
+            if (pixelCount > maxTypeIconPixelCount) {
+                return;
+            }
+            CachedIcon previous = typeIcons.get(key);
+            if (previous != null) {
+                if (previous.quality > quality) {
+                    return;
+                }
+                currentTypePixelCount -= pixelCount;
+            }
+            typeIcons.put(key, new CachedIcon(icon, quality));
+            currentTypePixelCount += pixelCount;
+            Iterator<Key> it = typeIcons.keySet().iterator();
+            while ((typeIcons.size() > maxTypeIconCount || currentTypePixelCount > maxTypePixelCount)
+                    && it.hasNext()) {
+                Key k = it.next();
+                it.remove();
+                currentTypePixelCount -= k.getPixelCount();
+                evictionCount++;
+            }
+            return;
+        }
+
+        if (pixelCount > maxIconPixelCount) {
+            return;
+        }
+        CachedIcon previous = fileIcons.get(key);
+        if (previous != null) {
+            if (previous.quality > quality) {
+                return;
+            }
+            currentPixelCount -= pixelCount;
+        }
+        fileIcons.put(key, new CachedIcon(icon, quality));
+        currentPixelCount += pixelCount;
+        if (currentPixelCount > maxPixelCount) {
+            Iterator<Map.Entry<Key,CachedIcon>> it = fileIcons.entrySet().iterator();
+            while (currentPixelCount > maxPixelCount && it.hasNext()) {
+                Map.Entry<Key,CachedIcon> e = it.next();
+                it.remove();
+                currentPixelCount -= e.getKey().getPixelCount();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Return the cached icon for a key, rendering and caching the icon if it is not cached.
+     * @param key The key.
+     * @param quality The quality level of a rendered icon.
+     * @param renderer The renderer to use if the icon is not cached.
+     * @return the icon, or null if the icon is not cached and could not be rendered.
+     */
+
+    public @Nullable CachedIcon getOrRender(@NotNull Key key, int quality, @NotNull Renderer renderer) {
+        CachedIcon cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ImageIcon icon = renderer.render();
+        if (icon == null) {
+            return null;
+        }
+        put(key, icon, quality);
+        return new CachedIcon(icon, quality);
+    }
+
+    /**
+     * Discard all cached icons.
+     */
+
+    public synchronized void flush() {
+        typeIcons.clear();
+        fileIcons.clear();
+        currentTypePixelCount = 0;
+        currentPixelCount = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return the fraction of lookups that found a cached icon.
+     * @return the hit rate, or zero if there have been no lookups.
+     */
+
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? (double) hitCount / total : 0;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int getTypeIconCount() {
+        return typeIcons.size();
+    }
+
+    public synchronized int getFileIconCount() {
+        return fileIcons.size();
+    }
+
+    /**
+     * Return the number of pixels in the cached file icons.
+     */
+
+    public synchronized int getPixelCount() {
+        return currentPixelCount;
+    }
+
+    /**
+     * Return the number of pixels in the cached type icons.
+     */
+
+    public synchronized int getTypePixelCount() {
+        return currentTypePixelCount;
+    }
+}
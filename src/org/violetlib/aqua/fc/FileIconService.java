@@ -59,5 +59,13 @@ public interface FileIconService {
          * Cancel the request, if possible.
          */
         void cancel();
+
+        /**
+         * Determine whether work that may deliver icons for this request has been scheduled but has not completed.
+         * Cancelling a pending request avoids work that has not started. The default implementation returns false.
+         */
+        default boolean isPending() {
+            return false;
+        }
     }
 }
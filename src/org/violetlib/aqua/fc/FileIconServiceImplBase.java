@@ -10,6 +10,10 @@ package org.violetlib.aqua.fc;
 
 import java.awt.*;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.*;
 
 import org.jetbrains.annotations.NotNull;
@@ -26,6 +30,51 @@ public class FileIconServiceImplBase {
     private @Nullable ImageIcon genericFileIcon;
     private @Nullable ImageIcon genericFolderIcon;
 
+    private static final @NotNull AtomicLong cancelledRequestCount = new AtomicLong();
+    private static final @NotNull AtomicLong avoidedRenderCount = new AtomicLong();
+    private static final @NotNull AtomicLong wastedRenderCount = new AtomicLong();
+
+    /**
+     * Return the number of pending requests that have been cancelled.
+     */
+    public static long getCancelledRequestCount() {
+        return cancelledRequestCount.get();
+    }
+
+    /**
+     * Return the number of rendering tasks that were not performed because their request was cancelled before they
+     * started.
+     */
+    public static long getAvoidedRenderCount() {
+        return avoidedRenderCount.get();
+    }
+
+    /**
+     * Return the number of rendering tasks that completed after their request was cancelled.
+     */
+    public static long getWastedRenderCount() {
+        return wastedRenderCount.get();
+    }
+
+    /**
+     * Dispatch a task that renders icons for a request. Tasks are performed in LIFO order, so that the icons most
+     * recently requested, which are typically the icons of the files currently displayed, are rendered first. A task
+     * is not performed if the request is cancelled before the task starts.
+     */
+    protected void dispatch(@NotNull ConcurrentDispatcher dispatcher, @NotNull RequestImpl request, @NotNull Runnable task) {
+        request.taskQueued();
+        Future<?> future = dispatcher.dispatch(() -> {
+            if (request.taskStarted()) {
+                try {
+                    task.run();
+                } finally {
+                    request.taskFinished();
+                }
+            }
+        }, true);
+        request.addFuture(future);
+    }
+
     /**
      * Install a generic icon for a file in the specified request, if possible.
      * The installation must be performed quickly on the current thread.
@@ -55,6 +104,10 @@ public class FileIconServiceImplBase {
         private final int highestAcceptedPriority;
         private @Nullable FileIconService.Handler handler;
         private int highestReceivedPriority = -1;
+        private @Nullable FileIconCache.Key cacheKey;
+        private int queuedTaskCount;
+        private int runningTaskCount;
+        private @Nullable List<Future<?>> futures;
 
         public RequestImpl(@NotNull File f, @Nullable FileIconService.Handler handler) {
             this.f = f;
@@ -68,12 +121,28 @@ public class FileIconServiceImplBase {
             this.highestAcceptedPriority = highestAcceptedPriority;
         }
 
+        /**
+         * Specify the key used to cache the icons installed after this call.
+         */
+        public synchronized void setCacheKey(@Nullable FileIconCache.Key key) {
+            this.cacheKey = key;
+        }
+
+        /**
+         * Determine whether an icon of the highest accepted priority has been installed, or the request has been
+         * cancelled.
+         */
+        public synchronized boolean isComplete() {
+            return highestReceivedPriority >= highestAcceptedPriority || handler == null;
+        }
+
         public synchronized void installIcon(@NotNull ImageIcon icon, int priority)
         {
             if (priority > highestReceivedPriority && priority <= highestAcceptedPriority && handler != null) {
                 debug(icon, priority);
                 handler.provideIcon(icon, priority);
                 highestReceivedPriority = priority;
+                cache(icon, priority);
             }
         }
 
@@ -84,6 +153,13 @@ public class FileIconServiceImplBase {
                 debug(icon, priority);
                 handler.provideIcon(icon, priority);
                 highestReceivedPriority = priority;
+                cache(icon, priority);
+            }
+        }
+
+        private void cache(@NotNull ImageIcon icon, int priority) {
+            if (cacheKey != null) {
+                FileIconCache.getInstance().put(cacheKey, icon, priority);
             }
         }
 
@@ -112,9 +188,64 @@ public class FileIconServiceImplBase {
             }
         }
 
+        synchronized void taskQueued() {
+            queuedTaskCount++;
+        }
+
+        synchronized void addFuture(@NotNull Future<?> future) {
+            if (handler == null) {
+                future.cancel(false);
+            } else if (queuedTaskCount + runningTaskCount > 0) {
+                if (futures == null) {
+                    futures = new ArrayList<>(2);
+                }
+                futures.add(future);
+            }
+        }
+
+        /**
+         * Called when a task is about to start.
+         * @return true if the task should be performed, false if the request has been cancelled.
+         */
+        synchronized boolean taskStarted() {
+            queuedTaskCount--;
+            if (handler == null) {
+                return false;
+            }
+            runningTaskCount++;
+            return true;
+        }
+
+        synchronized void taskFinished() {
+            runningTaskCount--;
+            if (handler == null) {
+                wastedRenderCount.incrementAndGet();
+            }
+            if (queuedTaskCount + runningTaskCount == 0) {
+                futures = null;
+            }
+        }
+
+        @Override
+        public synchronized boolean isPending() {
+            return handler != null && queuedTaskCount + runningTaskCount > 0;
+        }
+
         @Override
         public synchronized void cancel() {
-            handler = null;
+            if (handler != null) {
+                handler = null;
+                if (queuedTaskCount + runningTaskCount > 0) {
+                    cancelledRequestCount.incrementAndGet();
+                    avoidedRenderCount.addAndGet(queuedTaskCount);
+                }
+                if (futures != null) {
+                    for (Future<?> future : futures) {
+                        future.cancel(false);
+                    }
+                    futures = null;
+                }
+            }
         }
     }
 }
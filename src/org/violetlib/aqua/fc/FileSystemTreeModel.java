@@ -16,6 +16,8 @@ import java.io.Serializable;
 import java.text.CollationKey;
 import java.text.Collator;
 import java.util.*;
+import java.util.List;
+import java.util.stream.IntStream;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.filechooser.FileSystemView;
@@ -112,6 +114,63 @@ public class FileSystemTreeModel implements TreeModel {
      */
     private SequentialDispatcher aliasResolutionDispatcher;
 
+    /**
+     * Watches the directories that have been listed, if change notification is enabled.
+     */
+    private DirectoryWatcher directoryWatcher;
+
+    /**
+     * The maximum number of directories that are watched at one time.
+     */
+    private static final int MAX_WATCHED_DIRECTORIES = 256;
+
+    /**
+     * Directories with at least this many files are published in chunks when they are first listed.
+     */
+    private static final int STREAMING_THRESHOLD = 1000;
+
+    /**
+     * The number of files in the first chunk of a directory that is published in chunks.
+     */
+    private static final int FIRST_CHUNK_SIZE = 256;
+
+    /**
+     * The number of rows above and below the visible rows of a view whose icons
+     * are requested in advance.
+     */
+    public static final int DISPLAY_MARGIN = 8;
+
+    /**
+     * The nodes displayed by each view, including the margin.
+     */
+    private final Map<Object,Set<Node>> displayedNodes = new WeakHashMap<>();
+
+    /**
+     * The maximum number of nodes whose info is validated by one job of the
+     * file info dispatcher. Smaller jobs allow the info of newly displayed
+     * nodes to be validated before the remaining nodes of a large directory.
+     */
+    private static final int INFO_BATCH_SIZE = 64;
+
+    /**
+     * The nodes whose info validation has been requested while processing the
+     * current event. Accessed only on the AWT event dispatcher thread.
+     */
+    private final List<Node> pendingInfoNodes = new ArrayList<>();
+
+    /**
+     * The info validation batches that have been dispatched and whose results
+     * have not been installed. Accessed only on the AWT event dispatcher thread.
+     */
+    private final Set<InfoBatch> dispatchedInfoBatches = new HashSet<>();
+
+    /**
+     * The nodes with runnables waiting for valid info whose validation was
+     * cancelled by {@link #stopValidation}. They are validated again by
+     * {@link #startValidation}. Accessed only on the AWT event dispatcher thread.
+     */
+    private final List<Node> interruptedInfoNodes = new ArrayList<>();
+
     /**
      * Creates a new instance.
      *
@@ -158,6 +217,10 @@ public class FileSystemTreeModel implements TreeModel {
 
     public void dispose() {
         stopValidation();
+        aliasResolutionDispatcher.dispose();
+        fileInfoDispatcher.dispose();
+        directoryDispatcher.dispose();
+        setWatchingDirectories(false);
         clear();
     }
 
@@ -178,11 +241,8 @@ public class FileSystemTreeModel implements TreeModel {
     }
 
     private int getIndexOfChildForFile(FileSystemTreeModel.Node parent, File file) {
-        for (int i = 0; i < parent.getChildCount(); i++) {
-            FileSystemTreeModel.Node n = (FileSystemTreeModel.Node) parent.getChildAt(i);
-            if (n.getFile().equals(file) || n.getResolvedFile().equals(file)) {
-                return i;
-            }
+        if (parent instanceof DirectoryNode) {
+            return ((DirectoryNode) parent).getIndexOfChildForFile(file);
         }
         return -1;
     }
@@ -217,14 +277,19 @@ public class FileSystemTreeModel implements TreeModel {
     }
 
     private int getInsertionIndexForNode(FileSystemTreeModel.Node parent, FileSystemTreeModel.Node child) {
+        // The children are sorted, so a binary search finds the first child that does not precede the new child.
         Comparator comparator = getNodeComparator();
-        int i;
-        for (i = 0; i < parent.getChildCount(); i++) {
-            if (comparator.compare(parent.getChildAt(i), child) >= 0) {
-                return i;
+        int low = 0;
+        int high = parent.getChildCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(parent.getChildAt(mid), child) >= 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-        return i;
+        return low;
     }
 
     /**
@@ -473,6 +538,294 @@ public class FileSystemTreeModel implements TreeModel {
         return isAutoValidate;
     }
 
+    /**
+     * Sets whether directories are watched for changes. When a directory is watched, its listing is considered valid
+     * until a file is added to, removed from, or modified in the directory, rather than for a fixed time. A changed
+     * listing is read again when it is next lazily invalidated, as an expired listing is. Where the file system does
+     * not support watching, directory listings expire as they do when watching is disabled.
+     * <p>
+     * Watching is not supported on macOS, where the platform watch service polls the file system. On macOS, enabling
+     * watching has no effect.
+     */
+    public void setWatchingDirectories(boolean b) {
+        if (b != isWatchingDirectories()) {
+            if (b) {
+                directoryWatcher = new DirectoryWatcher(MAX_WATCHED_DIRECTORIES);
+            } else {
+                directoryWatcher.close();
+                directoryWatcher = null;
+            }
+        }
+    }
+
+    public boolean isWatchingDirectories() {
+        return directoryWatcher != null;
+    }
+
+    /**
+     * Specifies the nodes displayed by a view. Views call this method when
+     * the rows they display change, for example, when they are scrolled.
+     * Icons are requested in advance for the nodes in the margin.
+     * Pending icon requests for nodes that are no longer displayed by any
+     * view are cancelled, so that the icons of the displayed nodes are
+     * obtained sooner. The icon of such a node is requested again when the
+     * node is displayed again.
+     * This method must be called on the AWT event dispatcher thread.
+     *
+     * @param view The view.
+     * @param visibleNodes The nodes in the visible rows of the view.
+     * @param marginNodes The nodes in the rows adjacent to the visible rows,
+     *                    up to {@link #DISPLAY_MARGIN} rows in each direction.
+     */
+    public void setDisplayedNodes(Object view, Collection<?> visibleNodes, Collection<?> marginNodes) {
+        Set<Node> nodes = new HashSet<>();
+        for (Object o : visibleNodes) {
+            if (o instanceof Node) {
+                nodes.add((Node) o);
+            }
+        }
+        for (Object o : marginNodes) {
+            if (o instanceof Node) {
+                Node n = (Node) o;
+                nodes.add(n);
+                n.getIcon();
+            }
+        }
+
+        Set<Node> oldNodes = nodes.isEmpty() ? displayedNodes.remove(view) : displayedNodes.put(view, nodes);
+        if (oldNodes != null) {
+            for (Node n : oldNodes) {
+                if (!nodes.contains(n) && n.isIconRequestPending() && !isDisplayed(n)) {
+                    n.cancelIconRequest();
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a node for info validation. The nodes queued while processing one
+     * event are validated together, once the event has been processed.
+     * This method must be called on the AWT event dispatcher thread.
+     */
+    private void queueInfoValidation(Node n) {
+        if (pendingInfoNodes.isEmpty()) {
+            SwingUtilities.invokeLater(this::dispatchInfoValidation);
+        }
+        pendingInfoNodes.add(n);
+    }
+
+    /**
+     * Dispatches the queued nodes to the file info dispatcher in batches.
+     * The info of displayed nodes is validated first.
+     */
+    private void dispatchInfoValidation() {
+        List<Node> displayed = new ArrayList<>();
+        List<Node> other = new ArrayList<>();
+        for (Node n : pendingInfoNodes) {
+            if (n.infoState == VALIDATING) {
+                (isDisplayed(n) ? displayed : other).add(n);
+            }
+        }
+        pendingInfoNodes.clear();
+        dispatchInfoValidation(displayed, EventLoop.LANE_VISIBLE);
+        dispatchInfoValidation(other, EventLoop.LANE_DEFAULT);
+    }
+
+    private void dispatchInfoValidation(List<Node> nodes, int lane) {
+        for (int start = 0; start < nodes.size(); start += INFO_BATCH_SIZE) {
+            int end = Math.min(nodes.size(), start + INFO_BATCH_SIZE);
+            InfoBatch batch = new InfoBatch(nodes.subList(start, end));
+            dispatchedInfoBatches.add(batch);
+            fileInfoDispatcher.dispatch(() -> {
+                if (batch.start()) {
+                    batch.resolve();
+                    SwingUtilities.invokeLater(() -> installInfo(batch));
+                }
+            }, lane);
+        }
+    }
+
+    /**
+     * Installs the results of an info validation batch and notifies the
+     * listeners with one event for the changed children of each parent node.
+     */
+    private void installInfo(InfoBatch batch) {
+        dispatchedInfoBatches.remove(batch);
+        Map<Node,List<Node>> changedNodes = new LinkedHashMap<>();
+        List<Node> validatedNodes = new ArrayList<>(batch.nodes.length);
+        for (int i = 0; i < batch.nodes.length; i++) {
+            Node n = batch.nodes[i];
+            if (n.infoState != VALIDATING || n.infoGeneration != batch.generations[i]) {
+                // The info was invalidated while the batch was being resolved
+                if (n.infoState == INVALID && n.infoWaiters != null) {
+                    n.validateInfo();
+                }
+                continue;
+            }
+            n.fileLabel = batch.labels[i];
+            if (n.attributes == null && batch.attributes[i] != null) {
+                n.attributes = batch.attributes[i];
+            }
+            n.infoState = VALID;
+            validatedNodes.add(n);
+            Node parent = (Node) n.getParent();
+            if (parent != null && n.getRoot() == getRoot()) {
+                changedNodes.computeIfAbsent(parent, k -> new ArrayList<>()).add(n);
+            }
+        }
+
+        for (Map.Entry<Node,List<Node>> e : changedNodes.entrySet()) {
+            Node parent = e.getKey();
+            List<Node> children = e.getValue();
+            int count = children.size();
+            int[] indices = new int[count];
+            int found = 0;
+            for (Node child : children) {
+                int index = parent.getIndex(child);
+                if (index >= 0) {
+                    indices[found++] = index;
+                }
+            }
+            if (found > 0) {
+                indices = ArrayUtil.truncate(indices, 0, found);
+                Arrays.sort(indices);
+                Object[] changedChildren = new Object[found];
+                for (int i = 0; i < found; i++) {
+                    changedChildren[i] = parent.getChildAt(indices[i]);
+                }
+                fireTreeNodesChanged(this, parent.getPath(), indices, changedChildren);
+            }
+        }
+
+        for (Node n : validatedNodes) {
+            n.runInfoWaiters();
+        }
+    }
+
+    /**
+     * Cancels the info validation batches that have not been started and the
+     * validation of the queued nodes. The info of their nodes becomes invalid,
+     * so that it is validated again when it is next needed.
+     */
+    private void cancelInfoValidation() {
+        for (InfoBatch batch : dispatchedInfoBatches) {
+            if (batch.cancel()) {
+                for (int i = 0; i < batch.nodes.length; i++) {
+                    if (batch.nodes[i].infoGeneration == batch.generations[i]) {
+                        cancelInfoValidation(batch.nodes[i]);
+                    }
+                }
+            }
+        }
+        dispatchedInfoBatches.clear();
+        for (Node n : pendingInfoNodes) {
+            cancelInfoValidation(n);
+        }
+        pendingInfoNodes.clear();
+    }
+
+    private void cancelInfoValidation(Node n) {
+        if (n.infoState == VALIDATING) {
+            n.infoState = INVALID;
+            n.infoGeneration++;
+            if (n.infoWaiters != null) {
+                interruptedInfoNodes.add(n);
+            }
+        }
+    }
+
+    /**
+     * The nodes of an info validation job and the results of validating them.
+     * The results are resolved by a worker thread and installed on the AWT
+     * event dispatcher thread.
+     */
+    private class InfoBatch {
+        final Node[] nodes;
+        final File[] files;
+        final File[] resolvedFiles;
+        final boolean[] needsAttributes;
+        final AquaFileIcon[] icons;
+        final int[] generations;
+        final int[] labels;
+        final FileAttributeSnapshot[] attributes;
+        private boolean isStarted;
+        private boolean isCancelled;
+
+        /**
+         * Captures the state of the nodes. This constructor must be called on
+         * the AWT event dispatcher thread.
+         */
+        InfoBatch(List<Node> batchNodes) {
+            int count = batchNodes.size();
+            nodes = batchNodes.toArray(new Node[count]);
+            files = new File[count];
+            resolvedFiles = new File[count];
+            needsAttributes = new boolean[count];
+            icons = new AquaFileIcon[count];
+            generations = new int[count];
+            labels = new int[count];
+            attributes = new FileAttributeSnapshot[count];
+            for (int i = 0; i < count; i++) {
+                Node n = nodes[i];
+                files[i] = n.file;
+                resolvedFiles[i] = n.lazyGetResolvedFile();
+                needsAttributes[i] = n.attributes == null;
+                icons[i] = n.icon;
+                generations[i] = n.infoGeneration;
+            }
+        }
+
+        /**
+         * Marks the batch as started, unless it has been cancelled.
+         *
+         * @return true if the batch should be resolved.
+         */
+        synchronized boolean start() {
+            if (!isCancelled) {
+                isStarted = true;
+            }
+            return isStarted;
+        }
+
+        /**
+         * Cancels the batch, unless it has been started.
+         *
+         * @return true if the batch has been cancelled.
+         */
+        synchronized boolean cancel() {
+            if (!isStarted) {
+                isCancelled = true;
+            }
+            return isCancelled;
+        }
+
+        /**
+         * Obtains the labels and the attributes of the
+         * files and requests their icons. This method is called by a worker
+         * thread.
+         */
+        void resolve() {
+            for (int i = 0; i < nodes.length; i++) {
+                labels[i] = fileAttributes.getLabel(files[i]);
+                if (needsAttributes[i] && resolvedFiles[i] != null) {
+                    attributes[i] = nodes[i].readAttributes(resolvedFiles[i]);
+                }
+                if (icons[i] != null) {
+                    fileAttributes.requestIcon(files[i], icons[i]);
+                }
+            }
+        }
+    }
+
+    private boolean isDisplayed(Node n) {
+        for (Set<Node> nodes : displayedNodes.values()) {
+            if (nodes.contains(n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void setResolveAliasesToFiles(boolean newValue) {
         if (isResolveAliasesToFiles != newValue) {
             isResolveAliasesToFiles = newValue;
@@ -523,9 +876,25 @@ public class FileSystemTreeModel implements TreeModel {
         root.stopValidationSubtree();
         aliasResolutionDispatcher.stop();
         fileInfoDispatcher.stop();
+        fileInfoDispatcher.clear();
+        cancelInfoValidation();
         directoryDispatcher.stop();
     }
 
+    /**
+     * Resumes validation after it has been stalled by {@link #stopValidation}.
+     * This should be used when the tree model is needed again.
+     */
+    public void startValidation() {
+        aliasResolutionDispatcher.start();
+        fileInfoDispatcher.start();
+        List<Node> nodes = new ArrayList<>(interruptedInfoNodes);
+        interruptedInfoNodes.clear();
+        for (Node n : nodes) {
+            n.validateInfo();
+        }
+    }
+
     /**
      * Lazily invalidates the provided path.
      * This should be used to trigger lazy refreshes of the tree model when
@@ -805,7 +1174,18 @@ public class FileSystemTreeModel implements TreeModel {
 
         protected String userName;
         protected CollationKey collationKey;
-        protected String fileKind;
+        /**
+         * The attributes of the file. They are normally read by a worker thread
+         * when the parent directory is validated. The value null is used, if
+         * the attributes have not (yet) been read.
+         */
+        protected FileAttributeSnapshot attributes;
+        /**
+         * The kind of the file. The kind is read when it is first needed,
+         * because reading it requires a native call. The value null is used,
+         * if the kind has not (yet) been read.
+         */
+        protected volatile String fileKind;
 
         /**
          * Holds a Finder label for the file represented by this node.
@@ -820,10 +1200,24 @@ public class FileSystemTreeModel implements TreeModel {
          * or if it couldn't be determined due to the lack of native support.
          */
         protected AquaFileIcon icon;
+        /**
+         * Set when the icon request was cancelled before the icon was complete.
+         */
+        protected boolean isIconRequestCancelled;
         /**
          * Indicate whether the cached attributes are valid. If not valid, they must be computed.
+         * While they are being computed by a worker thread, the state is VALIDATING.
          */
         protected int infoState = INVALID;
+        /**
+         * Incremented when the cached attributes are invalidated, so that the
+         * results of a validation that was started earlier are discarded.
+         */
+        protected int infoGeneration;
+        /**
+         * The runnables to invoke when the cached attributes become valid.
+         */
+        private List<Runnable> infoWaiters;
         /**
          * Contains Boolean.TRUE or Boolean.FALSE, if the file has been
          * accepted or rejected by the FileFilter of the JFileChooser.
@@ -863,11 +1257,47 @@ public class FileSystemTreeModel implements TreeModel {
         }
 
         public long getFileLength() {
-            if (lazyGetResolvedFile() == null) {
-                return -1L;
-            } else {
-                return (getResolvedFile().isDirectory()) ? -1l : file.length();
+            return getAttributes().getLength();
+        }
+
+        /**
+         * Returns a snapshot of the attributes of the file. Sorting and rendering
+         * use the snapshot, so that they do not access the file system.
+         * If the snapshot was not read when the parent directory was validated,
+         * it is read now.
+         */
+        public @NotNull FileAttributeSnapshot getAttributes() {
+            if (attributes == null) {
+                File resolvedFile = lazyGetResolvedFile();
+                if (resolvedFile == null) {
+                    // Try again after the alias has been resolved
+                    return FileAttributeSnapshot.unknown();
+                }
+                attributes = readAttributes(resolvedFile);
             }
+            return attributes;
+        }
+
+        /**
+         * Reads the attributes of the file.
+         * This method may be called by a worker thread.
+         */
+        protected @NotNull FileAttributeSnapshot readAttributes(@NotNull File resolvedFile) {
+            return FileAttributeSnapshot.read(file, resolvedFile);
+        }
+
+        /**
+         * Replaces the attributes with attributes that were read more recently.
+         *
+         * @return true if the attributes have changed.
+         */
+        boolean updateAttributes(@NotNull FileAttributeSnapshot newAttributes) {
+            boolean isChanged = attributes != null && !attributes.equals(newAttributes);
+            attributes = newAttributes;
+            if (isChanged) {
+                fileKind = null;
+            }
+            return isChanged;
         }
 
         public @NotNull String getUserName() {
@@ -884,9 +1314,30 @@ public class FileSystemTreeModel implements TreeModel {
 
         public Icon getIcon() {
             validateInfo();
+            if (isIconRequestCancelled) {
+                isIconRequestCancelled = false;
+                fileAttributes.requestIcon(file, icon);
+            }
             return icon;
         }
 
+        /**
+         * Returns true if the icon is still being obtained.
+         */
+        public boolean isIconRequestPending() {
+            return icon != null && icon.isRequestPending();
+        }
+
+        /**
+         * Cancels the pending icon request, if any. The icon is requested again
+         * when it is next needed.
+         */
+        public void cancelIconRequest() {
+            if (icon != null && icon.cancelRequest()) {
+                isIconRequestCancelled = true;
+            }
+        }
+
         public CollationKey getCollationKey() {
             if (collationKey == null) {
                 collationKey = getCollator(fileChooser).getCollationKey(getUserName());
@@ -920,18 +1371,24 @@ public class FileSystemTreeModel implements TreeModel {
             return isHidden;
         }
 
+        /**
+         * Returns the kind of the file. The kind is read on first use, so that
+         * it is obtained only for files whose kind is displayed or sorted.
+         */
         public @NotNull String getFileKind() {
-            if (fileKind == null) {
-                fileKind = fileAttributes.getKind(file);
+            String kind = fileKind;
+            if (kind == null) {
+                kind = fileAttributes.getKind(file);
+                fileKind = kind;
             }
-            return fileKind;
+            return kind;
         }
 
         /**
          * Clears cached info
          */
         public void invalidateInfo() {
-            if (infoState == VALID) {
+            if (infoState != INVALID) {
                 if (isMonitoringInfoValidation(file)) {
                     Utils.logDebug("Invaliding info for " + file);
                 }
@@ -940,6 +1397,7 @@ public class FileSystemTreeModel implements TreeModel {
                 isAcceptable = null;
                 fileKind = null;
                 infoState = INVALID;
+                infoGeneration++;
             }
         }
 
@@ -947,37 +1405,48 @@ public class FileSystemTreeModel implements TreeModel {
          * Invoke the runnable when validation is complete, either now or later. This method does not block.
          */
         public void invokeWhenValid(Runnable r) {
-            invokeWhenValid(r, 100);
+            if (infoState == VALID) {
+                r.run();
+            } else {
+                if (infoWaiters == null) {
+                    infoWaiters = new ArrayList<>(1);
+                }
+                infoWaiters.add(r);
+                validateInfo();
+            }
         }
 
-        protected void invokeWhenValid(Runnable r, int counter) {
-            if (counter > 0) {
-                if (infoState == VALID) {
+        private void runInfoWaiters() {
+            List<Runnable> waiters = infoWaiters;
+            if (waiters != null) {
+                infoWaiters = null;
+                for (Runnable r : waiters) {
                     r.run();
-                } else {
-                    if (infoState == INVALID) {
-                        validateInfo();
-                    }
-                    SwingUtilities.invokeLater(() -> invokeWhenValid(r, counter - 1));
                 }
             }
         }
 
         /**
          * Updates values, that may change in a file.
+         * The values are obtained by a worker thread, together with the values
+         * of other nodes. Until then, the previous label and icon are used. A
+         * node that has no icon is given a generic file or folder icon. A
+         * TreeNodesChanged event is fired when the values are available.
+         * This method must be called on the AWT event dispatcher thread.
          */
         public void validateInfo() {
             if (infoState == INVALID) {
+                infoState = VALIDATING;
+                isIconRequestCancelled = false;
                 if (icon != null) {
-                    icon.removeChangeListener(this);
-                    icon = null;
+                    // The icon is requested again by the worker thread
+                    icon.cancelRequest();
+                } else {
+                    icon = new AquaFileIcon(16, 16);
+                    icon.installIcon(getAllowsChildren() ? OSXFile.getDirectoryIcon() : OSXFile.getFileIcon());
+                    icon.addChangeListener(this);
                 }
-                infoState = VALID;
-                fileLabel = fileAttributes.getLabel(file);
-                fileLabel = fileAttributes.getLabel(file);
-                icon = fileAttributes.getIcon(file);
-                icon.addChangeListener(this);
-                fireChangeEvent();
+                queueInfoValidation(this);
             }
         }
 
@@ -1028,6 +1497,13 @@ public class FileSystemTreeModel implements TreeModel {
             // nothing to do, because Node is a leaf.
         }
 
+        /**
+         * Stops watching the directories in this subtree for changes.
+         */
+        public void stopWatchingSubtree() {
+            // nothing to do, because Node is a leaf.
+        }
+
         /**
          * Marks this subtree as invalid.
          */
@@ -1172,6 +1648,14 @@ public class FileSystemTreeModel implements TreeModel {
         public File getResolvedFile() {
             return file;
         }
+
+        /**
+         * Returns the resolved file if it is known without resolving an alias.
+         * @return the resolved file, or null if this node is an alias that has not been resolved.
+         */
+        public File getKnownResolvedFile() {
+            return file;
+        }
     }
 
     /**
@@ -1186,6 +1670,15 @@ public class FileSystemTreeModel implements TreeModel {
          * The children.
          */
         private ArrayList children;
+        /**
+         * Maps the file and the known resolved file of each child to the index of the first child that matches.
+         * Created when needed and discarded when the children change.
+         */
+        private HashMap<File,Integer> fileIndex;
+        /**
+         * Whether some alias children were unresolved when the file index was created.
+         */
+        private boolean hasUnresolvedAliases;
         /**
          * The current validator.
          */
@@ -1242,6 +1735,8 @@ public class FileSystemTreeModel implements TreeModel {
                 // Step 1.1 Fetch fresh files
                 File[] freshFiles;
                 if (exists && isTraversable()) {
+                    // Watch the directory before reading it, so that no change is missed
+                    watchDirectory();
                     freshFiles = getFiles();
                 } else {
                     freshFiles = new File[0];
@@ -1257,71 +1752,22 @@ public class FileSystemTreeModel implements TreeModel {
                 //          - Check whether the file is wanted by the file filter
                 //          - Create a fresh node for the file
 
-                ArrayList freshNodeList = new ArrayList(freshFiles.length);
                 boolean isFileHidingEnabled=fileChooser.isFileHidingEnabled();
                 AquaFileSystemView fsv = getFileSystemView();
-                for (int i = 0; i < freshFiles.length; i++) {
-                    File freshFile = freshFiles[i];
-
-                    // Resolve alias and determine if fresh file is traversable
-                    // and if it is a directory.
-                    boolean freshIsTraversable;
-                    int freshFileType = OSXFile.getFileType(freshFile);
-                    boolean freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
-                    File resolvedFreshFile = null;
-                    boolean freshIsAlias;
-                    if (isResolveAliasesToFiles()) {
-                        freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
-                    } else {
-                        freshIsAlias = false;
-                    }
-                    if (freshIsAlias) {
-                        resolvedFreshFile = OSXFile.resolveAlias(freshFile, true);
-                        if (resolvedFreshFile == null) {
-                            freshIsTraversable = false;
-                        } else {
-                            freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
-                            freshFileType = OSXFile.getFileType(resolvedFreshFile);
-                            freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
-                        }
-                    } else {
-                        freshIsTraversable = fileChooser.isTraversable(freshFile);
-                        resolvedFreshFile = freshFile;
-                    }
-                    boolean freshIsHidden=fsv.isHiddenFile(freshFile);
-
-                    /*
-                      Special case: Network is visible under Computer even if it is hidden under /.
-                    */
 
-                    if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
-                        freshIsHidden = false;
-                    }
+                // A large directory that has not been listed before is published
+                // in chunks as its files are examined, so that the first files
+                // appear without waiting for the rest.
+                if (freshFiles.length >= STREAMING_THRESHOLD && (children == null || children.isEmpty())) {
+                    stream(freshFiles, isFileHidingEnabled, fsv, startTime);
+                    return;
+                }
 
-                    // Skip the fresh file if it is hidden
-                    if (!isFileHidingEnabled || !freshIsHidden) {
-
-                        // Note: The following code is redundant with method
-                        //       createNode().
-                        //       Changes applied to this code may also have to
-                        //       be done in the other method.
-                        if (freshIsAlias) {
-                            if (freshIsDirectory) {
-                                Node n=new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
-                                n.setTraversable(freshIsTraversable);
-                                freshNodeList.add(n);
-                            } else {
-                                freshNodeList.add(new AliasNode(freshFile, resolvedFreshFile, freshIsHidden));
-                            }
-                        } else {
-                            if (freshIsDirectory) {
-                                Node n=new DirectoryNode(freshFile, freshIsHidden);
-                                n.setTraversable(freshIsTraversable);
-                                freshNodeList.add(n);
-                            } else {
-                                freshNodeList.add(new Node(freshFile, freshIsHidden));
-                            }
-                        }
+                ArrayList freshNodeList = new ArrayList(freshFiles.length);
+                for (int i = 0; i < freshFiles.length; i++) {
+                    Node n = createFreshNode(freshFiles[i], isFileHidingEnabled, fsv);
+                    if (n != null) {
+                        freshNodeList.add(n);
                     }
                 }
                 Node[] freshNodes = (Node[]) freshNodeList.toArray(new Node[freshNodeList.size()]);
@@ -1330,6 +1776,7 @@ public class FileSystemTreeModel implements TreeModel {
                 }
 
                 // Step 1.3 Sort the fresh nodes
+                prepareCollationKeys(freshNodes);
                 Arrays.sort(freshNodes, getNodeComparator());
                 if (this != validator) {
                     return;
@@ -1360,6 +1807,8 @@ public class FileSystemTreeModel implements TreeModel {
                         int[] newChildIndices = new int[freshFiles.length];
                         LinkedList deletedChildren = new LinkedList();
                         int[] deletedChildIndices = new int[getChildCount()];
+                        LinkedList changedChildren = new LinkedList();
+                        int[] changedChildIndices = new int[freshNodes.length];
 
                         int freshIndex, oldIndex, mergeIndex, comparison;
                         Node[] oldNodes = (children == null) ? new Node[0] : (Node[]) children.toArray(new Node[children.size()]);
@@ -1403,6 +1852,13 @@ public class FileSystemTreeModel implements TreeModel {
                                 if (oldIndex < oldNodes.length) {
                                     Node oldNode = oldNodes[oldIndex];
                                     mergedChildren.add(oldNode);
+
+                                    // Keep the old node, but use the fresh attributes
+                                    FileAttributeSnapshot freshAttributes = freshIndex < freshNodes.length ? freshNodes[freshIndex].attributes : null;
+                                    if (freshAttributes != null && oldNode.updateAttributes(freshAttributes)) {
+                                        changedChildIndices[changedChildren.size()] = mergeIndex;
+                                        changedChildren.add(oldNode);
+                                    }
                                 }
                                 oldIndex++;
                                 freshIndex++;
@@ -1431,6 +1887,7 @@ public class FileSystemTreeModel implements TreeModel {
                                 Node n = (Node) i.next();
                                 n.parent = null;
                                 n.invalidateChildren();
+                                n.stopWatchingSubtree();
                             }
 
                             // We do not need to link the new children, because we
@@ -1446,9 +1903,11 @@ public class FileSystemTreeModel implements TreeModel {
                             // and replace the children with the merged children
                             if (newChildren.size() > 0 && deletedChildren.size() == 0) {
                                 children = mergedChildren;
+                                fileIndex = null;
                                 fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newChildren.size()), newChildren.toArray());
                             } else if (newChildren.size() == 0 && deletedChildren.size() > 0) {
                                 children = mergedChildren;
+                                fileIndex = null;
                                 fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()), deletedChildren.toArray());
                             } else if (newChildren.size() > 0 && deletedChildren.size() > 0) {
                                 // Instead of firing tree structure changed, we
@@ -1458,43 +1917,211 @@ public class FileSystemTreeModel implements TreeModel {
                                 removeAll(deletedChildren);
                                 fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()), deletedChildren.toArray());
                                 children = mergedChildren;
+                                fileIndex = null;
                                 fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newChildren.size()), newChildren.toArray());
                             }
                         }
 
-                        validator = null;
-
-                        // This is used to let the GUI know, that we have
-                        // finished with validating. We need to check for root,
-                        // because the node might have been removed from the
-                        // tree while we are updating it.
-                        Node nodeRoot = (Node) getRoot();
-                        if (nodeRoot == getRoot()) {
-                            fireTreeNodeChanged(DirectoryNode.this);
+                        if (changedChildren.size() > 0) {
+                            fireTreeNodesChanged(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(changedChildIndices, 0, changedChildren.size()), changedChildren.toArray());
                         }
 
-                        // To avoid too many refreshes done by the tree, we
-                        // compute a 'best before' time for the directory.
-                        // The 'best before' time, is the current time plus
-                        // a minimal TTL time plus three times the time we needed to
-                        // load the directory.
-                        long endTime = System.currentTimeMillis();
-                        bestBeforeTimeMillis = endTime + getDirectoryTTL() + (endTime - startTime) * 3;
-
-                        /*
-                        // Validate the info of the first 16 nodes
-                        for (int i=0, n = Math.min(16, mergedChildren.size()); i < n; i++) {
-                        Node node = (Node) mergedChildren.get(i);
-                        node.validateInfo();
-                        }*/
-
-                        if (DEBUG) {
-                            Utils.logDebug("FileSystemTreeModel validated " + (endTime - startTime) + " " + file);
+                        finish(startTime);
+                    }
+                });
+            }
+
+            /**
+             * Creates a node for a file read from the directory.
+             * This method is called by a worker thread.
+             *
+             * @return the node, or null if the file is hidden.
+             */
+            private Node createFreshNode(File freshFile, boolean isFileHidingEnabled, AquaFileSystemView fsv) {
+                // Resolve alias and determine if fresh file is traversable
+                // and if it is a directory.
+                boolean freshIsTraversable;
+                int freshFileType = OSXFile.getFileType(freshFile);
+                boolean freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
+                File resolvedFreshFile = null;
+                boolean freshIsAlias;
+                if (isResolveAliasesToFiles()) {
+                    freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
+                } else {
+                    freshIsAlias = false;
+                }
+                if (freshIsAlias) {
+                    resolvedFreshFile = OSXFile.resolveAlias(freshFile, true);
+                    if (resolvedFreshFile == null) {
+                        freshIsTraversable = false;
+                    } else {
+                        freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
+                        freshFileType = OSXFile.getFileType(resolvedFreshFile);
+                        freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
+                    }
+                } else {
+                    freshIsTraversable = fileChooser.isTraversable(freshFile);
+                    resolvedFreshFile = freshFile;
+                }
+                boolean freshIsHidden=fsv.isHiddenFile(freshFile);
+
+                /*
+                  Special case: Network is visible under Computer even if it is hidden under /.
+                */
+
+                if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
+                    freshIsHidden = false;
+                }
+
+                // Skip the fresh file if it is hidden
+                if (!isFileHidingEnabled || !freshIsHidden) {
+
+                    // Note: The following code is redundant with method
+                    //       createNode().
+                    //       Changes applied to this code may also have to
+                    //       be done in the other method.
+                    Node n;
+                    if (freshIsAlias) {
+                        if (freshIsDirectory) {
+                            n=new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
+                            n.setTraversable(freshIsTraversable);
+                        } else {
+                            n=new AliasNode(freshFile, resolvedFreshFile, freshIsHidden);
                         }
+                    } else {
+                        if (freshIsDirectory) {
+                            n=new DirectoryNode(freshFile, freshIsHidden);
+                            n.setTraversable(freshIsTraversable);
+                        } else {
+                            n=new Node(freshFile, freshIsHidden);
+                        }
+                    }
 
-                        childrenState = VALID;
+                    // Read the attributes now, so that sorting and rendering
+                    // do not access the file system.
+                    if (resolvedFreshFile != null) {
+                        n.attributes = n.readAttributes(resolvedFreshFile);
                     }
-                });
+                    return n;
+                }
+                return null;
+            }
+
+            /**
+             * Computes the collation keys of the fresh nodes in one batch, so
+             * that a large batch can be computed in parallel and sorting only
+             * compares keys.
+             * This method is called by a worker thread.
+             */
+            private void prepareCollationKeys(Node[] freshNodes) {
+                Collator collator = getCollator(fileChooser);
+                if (collator instanceof OSXCollator) {
+                    String[] names = new String[freshNodes.length];
+                    for (int i = 0; i < freshNodes.length; i++) {
+                        names[i] = freshNodes[i].getUserName();
+                    }
+                    CollationKey[] keys = ((OSXCollator) collator).getCollationKeys(names);
+                    for (int i = 0; i < freshNodes.length; i++) {
+                        freshNodes[i].collationKey = keys[i];
+                    }
+                }
+            }
+
+            /**
+             * Examines the files in chunks of increasing size, examining the
+             * files of a chunk in parallel. Each chunk is sorted and merged
+             * with the children on the AWT event dispatcher thread as soon as
+             * it is ready. This is used only when the directory has no
+             * children, so no children are deleted.
+             * This method is called by a worker thread.
+             */
+            private void stream(File[] freshFiles, boolean isFileHidingEnabled, AquaFileSystemView fsv, long startTime) {
+                Comparator comparator = getNodeComparator();
+                int chunkSize = FIRST_CHUNK_SIZE;
+                for (int start = 0; start < freshFiles.length; start += chunkSize, chunkSize *= 2) {
+                    int offset = start;
+                    int end = Math.min(freshFiles.length, start + chunkSize);
+                    Node[] chunk = new Node[end - start];
+                    IntStream.range(start, end).parallel().forEach(i ->
+                            chunk[i - offset] = createFreshNode(freshFiles[i], isFileHidingEnabled, fsv));
+                    if (this != validator) {
+                        return;
+                    }
+                    Node[] freshNodes = Arrays.stream(chunk).filter(Objects::nonNull).toArray(Node[]::new);
+                    prepareCollationKeys(freshNodes);
+                    Arrays.sort(freshNodes, comparator);
+                    boolean isLast = end == freshFiles.length;
+                    SwingUtilities.invokeLater(() -> publish(freshNodes, isLast, startTime));
+                }
+            }
+
+            /**
+             * Merges a sorted chunk of fresh nodes with the children.
+             * This method is called on the AWT event dispatcher thread.
+             */
+            private void publish(Node[] freshNodes, boolean isLast, long startTime) {
+                // Check if we have become obsolete
+                if (this != validator || getRoot() != FileSystemTreeModel.this.getRoot()) {
+                    return;
+                }
+
+                if (freshNodes.length > 0) {
+                    Comparator comparator = getNodeComparator();
+                    ArrayList oldChildren = (children == null) ? new ArrayList() : children;
+                    ArrayList mergedChildren = new ArrayList(oldChildren.size() + freshNodes.length);
+                    int[] newChildIndices = new int[freshNodes.length];
+                    int oldIndex = 0;
+                    for (int i = 0; i < freshNodes.length; i++) {
+                        Node newNode = freshNodes[i];
+                        while (oldIndex < oldChildren.size() && comparator.compare(oldChildren.get(oldIndex), newNode) <= 0) {
+                            mergedChildren.add(oldChildren.get(oldIndex++));
+                        }
+                        newNode.parent = DirectoryNode.this;
+                        newChildIndices[i] = mergedChildren.size();
+                        mergedChildren.add(newNode);
+                    }
+                    while (oldIndex < oldChildren.size()) {
+                        mergedChildren.add(oldChildren.get(oldIndex++));
+                    }
+                    children = mergedChildren;
+                    fileIndex = null;
+                    fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), newChildIndices, freshNodes);
+                }
+
+                if (isLast) {
+                    finish(startTime);
+                }
+            }
+
+            /**
+             * Completes the validation.
+             * This method is called on the AWT event dispatcher thread.
+             */
+            private void finish(long startTime) {
+                validator = null;
+
+                // This is used to let the GUI know, that we have
+                // finished with validating. We need to check for root,
+                // because the node might have been removed from the
+                // tree while we are updating it.
+                Node nodeRoot = (Node) getRoot();
+                if (nodeRoot == getRoot()) {
+                    fireTreeNodeChanged(DirectoryNode.this);
+                }
+
+                // To avoid too many refreshes done by the tree, we
+                // compute a 'best before' time for the directory.
+                // The 'best before' time, is the current time plus
+                // a minimal TTL time plus three times the time we needed to
+                // load the directory.
+                long endTime = System.currentTimeMillis();
+                bestBeforeTimeMillis = endTime + getDirectoryTTL() + (endTime - startTime) * 3;
+
+                if (DEBUG) {
+                    Utils.logDebug("FileSystemTreeModel validated " + (endTime - startTime) + " " + file);
+                }
+
+                childrenState = VALID;
             }
         }
         /**
@@ -1507,6 +2134,17 @@ public class FileSystemTreeModel implements TreeModel {
          * precedence over directories which had been visited already. 
          */
         private long bestBeforeTimeMillis = 0;
+        /**
+         * Set when the watched directory has changed since it was last listed.
+         * Accessed only on the AWT event dispatcher thread.
+         */
+        private boolean isChangedSinceListed;
+
+        /**
+         * The registration for change notification, if the directory is watched.
+         * While the registration is valid, the listing does not expire.
+         */
+        private volatile DirectoryWatcher.Registration watch;
 
         public DirectoryNode(File file, boolean isHidden) {
             super(file, isHidden);
@@ -1564,7 +2202,12 @@ public class FileSystemTreeModel implements TreeModel {
          */
         @Override
         public void lazyInvalidateChildren() {
-            if (validator == null && bestBeforeTimeMillis < System.currentTimeMillis()) {
+            if (validator == null && isWatched()) {
+                if (DEBUG) {
+                    Utils.logDebug("FileSystemTreeModel.lazyInvalidateChildren NO  watched " + lazyGetResolvedFile());
+                }
+            } else if (validator == null
+                    && (isChangedSinceListed || bestBeforeTimeMillis < System.currentTimeMillis())) {
                 if (DEBUG) {
                     Utils.logDebug("FileSystemTreeModel.lazyInvalidateChildren YES  validator=" + validator + " good for " + (bestBeforeTimeMillis - System.currentTimeMillis()) + " millis " + lazyGetResolvedFile());
                 }
@@ -1580,6 +2223,57 @@ public class FileSystemTreeModel implements TreeModel {
             return validator != null;
         }
 
+        /**
+         * Determine whether the listing of this directory can be kept valid by watching the directory for changes.
+         */
+        protected boolean isWatchable() {
+            return true;
+        }
+
+        private boolean isWatched() {
+            DirectoryWatcher.Registration w = watch;
+            return w != null && w.isValid() && childrenState == VALID && !isChangedSinceListed;
+        }
+
+        /**
+         * Register for change notification, if enabled. Called on a worker thread.
+         */
+        private void watchDirectory() {
+            DirectoryWatcher watcher = directoryWatcher;
+            DirectoryWatcher.Registration w = watch;
+            if (watcher != null && isWatchable() && (w == null || !w.isValid())) {
+                File dir = lazyGetResolvedFile();
+                if (dir != null) {
+                    watch = watcher.register(dir, this::directoryChanged);
+                }
+            }
+        }
+
+        /**
+         * Called on the AWT event dispatcher thread when the watched directory has changed.
+         * The listing is read again when it is next lazily invalidated.
+         */
+        private void directoryChanged() {
+            if (DEBUG) {
+                Utils.logDebug("FileSystemTreeModel.directoryChanged " + lazyGetResolvedFile());
+            }
+            isChangedSinceListed = true;
+        }
+
+        @Override
+        public void stopWatchingSubtree() {
+            DirectoryWatcher.Registration w = watch;
+            if (w != null) {
+                watch = null;
+                w.cancel();
+            }
+            if (children != null) {
+                for (Object o : children) {
+                    ((Node) o).stopWatchingSubtree();
+                }
+            }
+        }
+
         @Override
         public void stopValidationSubtree() {
             validator = null;
@@ -1642,6 +2336,7 @@ public class FileSystemTreeModel implements TreeModel {
         public void validateChildren() {
             if (childrenState == INVALID) {
                 childrenState = VALIDATING;
+                isChangedSinceListed = false;
 
                 validator = new DirectoryValidator();
                 //
@@ -1679,6 +2374,7 @@ public class FileSystemTreeModel implements TreeModel {
 
         private void removeAll(LinkedList deletedChildren) {
             children.removeAll(deletedChildren);
+            fileIndex = null;
             for (Iterator i = deletedChildren.iterator(); i.hasNext();) {
                 Node n = (Node) i.next();
                 n.parent = null;
@@ -1708,7 +2404,64 @@ public class FileSystemTreeModel implements TreeModel {
         @Override
         public int getIndex(TreeNode node) {
             autoValidateChildren();
-            return (children == null) ? -1 : children.indexOf(node);
+            if (children == null) {
+                return -1;
+            }
+            if (node instanceof Node) {
+                if (node.getParent() != this) {
+                    return -1;
+                }
+                Integer index = getFileIndex().get(((Node) node).getFile());
+                if (index != null && children.get(index) == node) {
+                    return index;
+                }
+            }
+            return children.indexOf(node);
+        }
+
+        /**
+         * Returns the index of the first child whose file or resolved file is the specified file.
+         * @return the index, or -1 if there is no such child.
+         */
+        public int getIndexOfChildForFile(File file) {
+            autoValidateChildren();
+            if (children == null) {
+                return -1;
+            }
+            Integer index = getFileIndex().get(file);
+            if (index != null) {
+                return index;
+            }
+            if (hasUnresolvedAliases) {
+                // an alias may have been resolved after the index was created
+                for (int i = 0; i < children.size(); i++) {
+                    Node n = (Node) children.get(i);
+                    if (n.isAlias() && n.getResolvedFile().equals(file)) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private HashMap<File,Integer> getFileIndex() {
+            if (fileIndex == null) {
+                HashMap<File,Integer> m = new HashMap<>(children.size() * 2);
+                boolean unresolved = false;
+                for (int i = 0; i < children.size(); i++) {
+                    Node n = (Node) children.get(i);
+                    m.putIfAbsent(n.getFile(), i);
+                    File resolvedFile = n.getKnownResolvedFile();
+                    if (resolvedFile == null) {
+                        unresolved = true;
+                    } else {
+                        m.putIfAbsent(resolvedFile, i);
+                    }
+                }
+                fileIndex = m;
+                hasUnresolvedAliases = unresolved;
+            }
+            return fileIndex;
         }
 
         @Override
@@ -1731,6 +2484,7 @@ public class FileSystemTreeModel implements TreeModel {
                 children = new ArrayList();
             }
             children.add(childIndex, newChild);
+            fileIndex = null;
         }
 
         @Override
@@ -1752,7 +2506,7 @@ public class FileSystemTreeModel implements TreeModel {
             if (aChild.getParent() != this) {
                 throw new IllegalArgumentException("argument is not a child");
             }
-            remove(getIndex(aChild)); // linear search
+            remove(getIndex(aChild));
         }
 
         @Override
@@ -1761,6 +2515,7 @@ public class FileSystemTreeModel implements TreeModel {
 
             MutableTreeNode child = (MutableTreeNode) getChildAt(childIndex);
             children.remove(childIndex);
+            fileIndex = null;
             child.setParent(null);
         }
 
@@ -1808,6 +2563,12 @@ public class FileSystemTreeModel implements TreeModel {
             return 1000;
         }
 
+        @Override
+        protected boolean isWatchable() {
+            // The children are the file system roots, not the contents of a directory
+            return false;
+        }
+
         @Override
         protected File[] getFiles() {
             LinkedList list = new LinkedList();
@@ -1890,6 +2651,11 @@ public class FileSystemTreeModel implements TreeModel {
             return (resolvedFile == null) ? file : resolvedFile;
         }
 
+        @Override
+        public File getKnownResolvedFile() {
+            return resolvedFile;
+        }
+
         @Override
         public @NotNull String getFileKind() {
             return "alias";
@@ -1960,6 +2726,11 @@ public class FileSystemTreeModel implements TreeModel {
             return (resolvedFile == null) ? file : resolvedFile;
         }
 
+        @Override
+        public File getKnownResolvedFile() {
+            return resolvedFile;
+        }
+
         @Override
         public boolean isValidatingChildren() {
             return super.isValidatingChildren() || resolver != null;
@@ -2011,10 +2782,8 @@ public class FileSystemTreeModel implements TreeModel {
          * @param o2 An instance of FileSystemTreeModel.Node.
          */
         public int compare(Object o1, Object o2) {
-            File f1 = ((Node) o1).lazyGetResolvedFile();
-            File f2 = ((Node) o2).lazyGetResolvedFile();
-            long ts1 = f1 != null ? f1.lastModified() : 0;
-            long ts2 = f2 != null ? f2.lastModified() : 0;
+            long ts1 = ((Node) o1).getAttributes().getLastModified();
+            long ts2 = ((Node) o2).getAttributes().getLastModified();
             long diff = ts1 - ts2;
             return diff > 0 ? 1 : diff < 0 ? -1 : 0;
         }
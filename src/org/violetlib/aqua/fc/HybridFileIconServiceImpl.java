@@ -10,8 +10,10 @@ package org.violetlib.aqua.fc;
 
 import java.awt.*;
 import java.io.File;
+import javax.swing.*;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.violetlib.aqua.AquaImageFactory;
 import org.violetlib.aqua.AquaMultiResolutionImage;
 import org.violetlib.aqua.Utils;
@@ -38,8 +40,8 @@ public class HybridFileIconServiceImpl
         installGenericFileIcon(f, request);
 
         if (OSXFile.isAvailable()) {
-            dispatcher.dispatch(new Task(f, size, request, false));
-            dispatcher.dispatch(new Task(f, size, request, true));
+            dispatch(dispatcher, request, new Task(f, size, scale, request, false));
+            dispatch(dispatcher, request, new Task(f, size, scale, request, true));
         }
 
         return request;
@@ -49,18 +51,37 @@ public class HybridFileIconServiceImpl
             implements Runnable {
         private final @NotNull File file;
         private final int size;
+        private final float scale;
         private final @NotNull RequestImpl request;
         private final boolean useQuickLook;
 
-        public Task(@NotNull File file, int size, @NotNull RequestImpl request, boolean useQuickLook) {
+        public Task(@NotNull File file, int size, float scale, @NotNull RequestImpl request, boolean useQuickLook) {
             this.file = file;
             this.size = size;
+            this.scale = scale;
             this.request = request;
             this.useQuickLook = useQuickLook;
         }
 
         @Override
         public void run() {
+            int priority = useQuickLook ? FileIconService.ICON_GENERIC : FileIconService.ICON_CUSTOM;
+            String source = useQuickLook ? "Quick Look" : "Launch Services";
+            FileIconCache.Key key = FileIconCache.createFileKey(file, size, scale, source);
+            if (key != null) {
+                FileIconCache.CachedIcon icon = FileIconCache.getInstance().getOrRender(key, priority, this::render);
+                if (icon != null) {
+                    request.installIcon(icon.getIcon(), icon.getQuality());
+                }
+            } else {
+                ImageIcon icon = render();
+                if (icon != null) {
+                    request.installIcon(icon, priority);
+                }
+            }
+        }
+
+        private @Nullable ImageIcon render() {
             String path = file.getAbsolutePath();
             int[][] buffers = new int[2][];
             if (!AquaFileIcons.nativeRenderFileImage(path, useQuickLook, true, buffers, size, size)) {
@@ -74,9 +95,9 @@ public class HybridFileIconServiceImpl
                     Utils.logDebug("Rendered " + type + " image for " + path);
                 }
                 Image image = AquaMultiResolutionImage.createImage(size, size, buffers[0], buffers[1]);
-                int priority = useQuickLook ? FileIconService.ICON_GENERIC : FileIconService.ICON_CUSTOM;
-                request.installImage(image, priority);
+                return new ImageIcon(image);
             }
+            return null;
         }
     }
 }
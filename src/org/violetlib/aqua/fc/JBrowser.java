@@ -151,6 +151,11 @@ public class JBrowser extends JComponent implements Scrollable {
      */
     private transient ColumnKeyListener columnKeyListener = new ColumnKeyListener();
 
+    /**
+     * Notifies visible rows listeners when a column is scrolled or resized.
+     */
+    private transient ChangeListener columnViewportListener = e -> fireVisibleRowsChanged();
+
     /**
      * The cell used to draw nodes. If {@code null}, the UI uses a default
      * {@code cellRenderer}.
@@ -1315,6 +1320,61 @@ public class JBrowser extends JComponent implements Scrollable {
         listenerList.remove(TreeSelectionListener.class, tsl);
     }
 
+    /**
+     * Adds a listener to be notified when the rows displayed by the list columns may have changed, because a column
+     * has been scrolled, resized, added, or removed.
+     */
+    public void addVisibleRowsListener(ChangeListener l) {
+        listenerList.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Removes a visible rows listener.
+     */
+    public void removeVisibleRowsListener(ChangeListener l) {
+        listenerList.remove(ChangeListener.class, l);
+    }
+
+    protected void fireVisibleRowsChanged() {
+        Object[] listeners = listenerList.getListenerList();
+        ChangeEvent e = null;
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == ChangeListener.class) {
+                if (e == null) {
+                    e = new ChangeEvent(this);
+                }
+                ((ChangeListener) listeners[i + 1]).stateChanged(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the values displayed by the list columns.
+     *
+     * @param margin The number of rows above and below the visible rows of each column whose values are returned as
+     *               adjacent values.
+     * @param visibleValues The values in the visible rows are added to this list.
+     * @param adjacentValues The values in the rows adjacent to the visible rows are added to this list.
+     */
+    public void getDisplayedValues(int margin, @NotNull java.util.List<Object> visibleValues, @NotNull java.util.List<Object> adjacentValues) {
+        for (int i = 0; i < getListColumnCount(); i++) {
+            JList l = getColumnList(i);
+            int first = l.getFirstVisibleIndex();
+            int last = l.getLastVisibleIndex();
+            if (first >= 0 && last >= first) {
+                ListModel m = l.getModel();
+                int size = m.getSize();
+                for (int row = Math.max(0, first - margin); row <= Math.min(size - 1, last + margin); row++) {
+                    if (row >= first && row <= last) {
+                        visibleValues.add(m.getElementAt(row));
+                    } else {
+                        adjacentValues.add(m.getElementAt(row));
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Notifies all listeners that have registered interest for notification on this event type.
      *
@@ -1502,6 +1562,10 @@ public class JBrowser extends JComponent implements Scrollable {
         l.setDragEnabled(getDragEnabled());
         l.setTransferHandler(getTransferHandler());
         ListColumn column = new ListColumn(l, path.getPathCount() - 1);
+        Container p = l.getParent();
+        if (p instanceof JViewport) {
+            ((JViewport) p).addChangeListener(columnViewportListener);
+        }
 
         add(column, getListColumnCount());
     }
@@ -1594,6 +1658,10 @@ public class JBrowser extends JComponent implements Scrollable {
      */
     protected void removeListColumn(int columnIndex) {
         JList l = getColumnList(columnIndex);
+        Container p = l.getParent();
+        if (p instanceof JViewport) {
+            ((JViewport) p).removeChangeListener(columnViewportListener);
+        }
 
         Column sp = (Column) getComponent(columnIndex);
         sp.remove(l);
@@ -1603,6 +1671,7 @@ public class JBrowser extends JComponent implements Scrollable {
         l.removeKeyListener(columnKeyListener);
 
         ((ColumnListModel) l.getModel()).dispose();
+        fireVisibleRowsChanged();
     }
 
     /** This method is called from within the constructor to
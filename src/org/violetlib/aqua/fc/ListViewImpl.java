@@ -15,6 +15,7 @@ import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -46,6 +47,8 @@ public class ListViewImpl extends ListView {
     protected final JFileChooser fc;
     private final TreeSelectionListener treeSelectionListener;
     protected Border tableHeaderBorder;
+    private boolean isActive;
+    private FileSystemTreeModel displayedNodesModel;  // the model last informed of the displayed nodes
 
     public ListViewImpl(JFileChooser fc) {
 
@@ -78,6 +81,7 @@ public class ListViewImpl extends ListView {
         listViewScrollPane.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
         listViewScrollPane.setViewportView(tree);
         listViewScrollPane.setColumnHeaderView(tree.getTableHeader());
+        listViewScrollPane.getViewport().addChangeListener(e -> updateDisplayedNodes());
 
         setLayout(new BorderLayout());
         add(listViewScrollPane);
@@ -98,11 +102,51 @@ public class ListViewImpl extends ListView {
     public void setActive(boolean b) {
         TreeSelectionModel sm = tree.getSelectionModel();
 
+        isActive = b;
         if (b) {
             sm.addTreeSelectionListener(treeSelectionListener);
         } else {
             sm.removeTreeSelectionListener(treeSelectionListener);
         }
+        updateDisplayedNodes();
+    }
+
+    /**
+     * Informs the model of the nodes displayed by this view, so that their icons are obtained first.
+     */
+    protected void updateDisplayedNodes() {
+        java.util.List<Object> visibleNodes = new ArrayList<>();
+        java.util.List<Object> marginNodes = new ArrayList<>();
+        FileSystemTreeModel fullModel = isActive && model != null ? (FileSystemTreeModel) model.getTargetModel() : null;
+        if (fullModel != null) {
+            Rectangle r = tree.getVisibleRect();
+            int rowCount = tree.getRowCount();
+            int first = r.isEmpty() ? -1 : tree.rowAtPoint(new Point(r.x, r.y));
+            if (first >= 0) {
+                int last = tree.rowAtPoint(new Point(r.x, r.y + r.height - 1));
+                if (last < 0) {
+                    last = rowCount - 1;
+                }
+                int margin = FileSystemTreeModel.DISPLAY_MARGIN;
+                for (int row = Math.max(0, first - margin); row <= Math.min(rowCount - 1, last + margin); row++) {
+                    TreePath path = tree.getPathForRow(row);
+                    if (path != null) {
+                        if (row >= first && row <= last) {
+                            visibleNodes.add(path.getLastPathComponent());
+                        } else {
+                            marginNodes.add(path.getLastPathComponent());
+                        }
+                    }
+                }
+            }
+        }
+        if (displayedNodesModel != null && displayedNodesModel != fullModel) {
+            displayedNodesModel.setDisplayedNodes(this, Collections.emptyList(), Collections.emptyList());
+        }
+        displayedNodesModel = fullModel;
+        if (fullModel != null) {
+            fullModel.setDisplayedNodes(this, visibleNodes, marginNodes);
+        }
     }
 
     @Override
@@ -147,6 +191,7 @@ public class ListViewImpl extends ListView {
         tree.setRowSorter(new MyTreeRowSorter(tree));
         tree.revalidate();
         tree.repaint();
+        updateDisplayedNodes();
     }
 
     @Override
@@ -320,8 +365,11 @@ public class ListViewImpl extends ListView {
 
         protected Object getCellValue(Object o) {
             FileSystemTreeModel.Node pn = (FileSystemTreeModel.Node) o;
-            File f = pn.lazyGetResolvedFile();
-            return getModifiedString(f, tableColumnModel.dateModifiedColumn.getWidth());
+            FileAttributeSnapshot attributes = pn.getAttributes();
+            if (!attributes.isKnown()) {
+                return "";
+            }
+            return getModifiedString(attributes.getLastModified(), tableColumnModel.dateModifiedColumn.getWidth());
         }
     }
 
@@ -434,16 +482,20 @@ public class ListViewImpl extends ListView {
 
     protected String getModifiedString(File f, int width) {
         if (f != null) {
-            Date d = new Date(f.lastModified());
-            if (width < 150) {
-                DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT);
-                return df.format(d);
-            } else {
-                DateFormat df = DateFormat.getDateInstance();
-                return df.format(d);
-            }
+            return getModifiedString(f.lastModified(), width);
         } else {
             return "";
         }
     }
+
+    protected String getModifiedString(long lastModified, int width) {
+        Date d = new Date(lastModified);
+        if (width < 150) {
+            DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT);
+            return df.format(d);
+        } else {
+            DateFormat df = DateFormat.getDateInstance();
+            return df.format(d);
+        }
+    }
 }
@@ -13,6 +13,9 @@ import java.text.Collator;
 import java.text.ParseException;
 import java.text.RuleBasedCollator;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * The OSXCollator strives to match the collation rules used by the Mac OS X
@@ -39,6 +42,16 @@ import java.util.Locale;
  * @version $Id$
  */
 public class OSXCollator extends Collator {
+    /**
+     * The collators with rewritten rules, by locale. Creating a collator
+     * parses the rules, which is expensive, so it is done once per locale.
+     * Each instance uses its own clone, which shares the parsed tables.
+     */
+    private static final ConcurrentHashMap<Locale,Collator> collators = new ConcurrentHashMap<>();
+
+    /** The minimum number of strings processed by one thread in getCollationKeys. */
+    private static final int MIN_BATCH_SIZE = 256;
+
     private Collator collator;
 
     /** Creates a new instance. */
@@ -47,50 +60,58 @@ public class OSXCollator extends Collator {
     }
 
     public OSXCollator(Locale locale) {
-            collator = Collator.getInstance(locale);
-
-            if (collator instanceof RuleBasedCollator) {
-                String rules = ((RuleBasedCollator) collator).getRules();
-
-                // If hyphen is ignored except for tertiary difference, make it
-                // a primary difference, and move in front of the first primary
-                // difference found in the rules
-                int pos = rules.indexOf(",'-'");
-                int primaryRelationPos = rules.indexOf('<');
-                if (primaryRelationPos == rules.indexOf("'<'")) {
-                    primaryRelationPos = rules.indexOf('<', primaryRelationPos + 2);
-                }
-                if (pos != -1 && pos < primaryRelationPos) {
-                    rules = rules.substring(0, pos)
-                    + rules.substring(pos + 4, primaryRelationPos)
-                    + "<'-'"
-                    + rules.substring(primaryRelationPos);
-                }
+        collator = (Collator) collators.computeIfAbsent(locale, OSXCollator::createCollator).clone();
+    }
 
-                // If space is ignored except for secondary and tertiary
-                // difference, make it a primary difference, and move in front
-                // of the first primary difference found in the rules
-                pos = rules.indexOf(";' '");
-                primaryRelationPos = rules.indexOf('<');
-                if (primaryRelationPos == rules.indexOf("'<'")) {
-                    primaryRelationPos = rules.indexOf('<', primaryRelationPos + 2);
-                }
-                if (pos != -1 && pos < primaryRelationPos) {
-                    rules = rules.substring(0, pos)
-                    + rules.substring(pos + 4, primaryRelationPos)
-                    + "<' '"
-                    + rules.substring(primaryRelationPos);
-                }
+    private static Collator createCollator(Locale locale) {
+        Collator collator = Collator.getInstance(locale);
 
-                try {
+        if (collator instanceof RuleBasedCollator) {
+            String rules = ((RuleBasedCollator) collator).getRules();
+
+            // If hyphen is ignored except for tertiary difference, make it
+            // a primary difference, and move in front of the first primary
+            // difference found in the rules
+            int pos = rules.indexOf(",'-'");
+            int primaryRelationPos = rules.indexOf('<');
+            if (primaryRelationPos == rules.indexOf("'<'")) {
+                primaryRelationPos = rules.indexOf('<', primaryRelationPos + 2);
+            }
+            if (pos != -1 && pos < primaryRelationPos) {
+                rules = rules.substring(0, pos)
+                + rules.substring(pos + 4, primaryRelationPos)
+                + "<'-'"
+                + rules.substring(primaryRelationPos);
+            }
+
+            // If space is ignored except for secondary and tertiary
+            // difference, make it a primary difference, and move in front
+            // of the first primary difference found in the rules
+            pos = rules.indexOf(";' '");
+            primaryRelationPos = rules.indexOf('<');
+            if (primaryRelationPos == rules.indexOf("'<'")) {
+                primaryRelationPos = rules.indexOf('<', primaryRelationPos + 2);
+            }
+            if (pos != -1 && pos < primaryRelationPos) {
+                rules = rules.substring(0, pos)
+                + rules.substring(pos + 4, primaryRelationPos)
+                + "<' '"
+                + rules.substring(primaryRelationPos);
+            }
+
+            try {
                 collator = new RuleBasedCollator(rules);
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                    }
+            } catch (ParseException e) {
+                e.printStackTrace();
             }
+        }
+        return collator;
     }
 
     public int compare(String source, String target) {
+        if (source != null && source.equals(target)) {
+            return 0;
+        }
         return collator.compare(expandNumbers(source), expandNumbers(target));
     }
 
@@ -98,6 +119,38 @@ public class OSXCollator extends Collator {
         return collator.getCollationKey(expandNumbers(source));
     }
 
+    /**
+     * Returns the collation keys for the specified strings.
+     * Large batches are divided among several threads, each of which uses
+     * its own clone of the underlying collator, because the methods of a
+     * RuleBasedCollator are synchronized.
+     */
+    public CollationKey[] getCollationKeys(String[] sources) {
+        CollationKey[] keys = new CollationKey[sources.length];
+        int batchCount = Math.min(sources.length / MIN_BATCH_SIZE, ForkJoinPool.getCommonPoolParallelism());
+        if (batchCount <= 1) {
+            for (int i = 0; i < sources.length; i++) {
+                keys[i] = getCollationKey(sources[i]);
+            }
+        } else {
+            int batchSize = (sources.length + batchCount - 1) / batchCount;
+            IntStream.range(0, batchCount).parallel().forEach(b -> {
+                Collator c = (Collator) collator.clone();
+                int end = Math.min(sources.length, (b + 1) * batchSize);
+                for (int i = b * batchSize; i < end; i++) {
+                    keys[i] = c.getCollationKey(expandNumbers(sources[i]));
+                }
+            });
+        }
+        return keys;
+    }
+
+    public Object clone() {
+        OSXCollator that = (OSXCollator) super.clone();
+        that.collator = (Collator) collator.clone();
+        return that;
+    }
+
     public boolean equals(Object o) {
         if (o instanceof OSXCollator) {
             OSXCollator that = (OSXCollator) o;
@@ -110,52 +163,55 @@ public class OSXCollator extends Collator {
         return collator.hashCode();
     }
 
-    private String expandNumbers(String s) {
+    /**
+     * Prefixes each sequence of digits with its length, so that the
+     * collator orders numbers by value. A string without digits is
+     * returned as is, without allocating a new string.
+     */
+    private static String expandNumbers(String s) {
         if (s == null) return null;
 
-        // FIXME - Use StringBuilder here when we abandon support for J2SE 1.4.
-        StringBuffer out = new StringBuffer();
-        StringBuffer digits = new StringBuffer();
+        int n = s.length();
+        int i = 0;
+        while (i < n && !isDigit(s.charAt(i))) {
+            i++;
+        }
+        if (i == n) {
+            return s;
+        }
 
-        for (int i=0, n = s.length(); i < n; i++) {
+        StringBuilder out = new StringBuilder(n + 6);
+        out.append(s, 0, i);
+        while (i < n) {
             char ch = s.charAt(i);
-            //if (Character.isDigit(ch)) {
-            if (ch >= '0' && ch <= '9') {
-                digits.append(ch);
-            } else {
-                if (digits.length() != 0) {
-                    if (digits.length() < 10) {
-                        out.append("00");
-                        out.append(digits.length());
-                    } else if (digits.length() < 100) {
-                        out.append("0");
-                        out.append(digits.length());
-                    } else if (digits.length() < 1000) {
-                        out.append(digits.length());
-                    } else if (digits.length() > 999) {
-                        out.append("999");
-                    }
-                    out.append(digits.toString());
-                    digits.delete(0, digits.length());
+            if (isDigit(ch)) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < n && isDigit(s.charAt(i)));
+                int length = i - start;
+                if (length < 10) {
+                    out.append("00");
+                    out.append(length);
+                } else if (length < 100) {
+                    out.append('0');
+                    out.append(length);
+                } else if (length < 1000) {
+                    out.append(length);
+                } else {
+                    out.append("999");
                 }
+                out.append(s, start, i);
+            } else {
                 out.append(ch);
+                i++;
             }
         }
-        if (digits.length() != 0) {
-            if (digits.length() < 10) {
-                out.append("00");
-                out.append(digits.length());
-            } else if (digits.length() < 100) {
-                out.append("0");
-                out.append(digits.length());
-            } else if (digits.length() < 1000) {
-                out.append(digits.length());
-            } else if (digits.length() > 999) {
-                out.append("999");
-            }
-            out.append(digits);
-        }
-
         return out.toString();
     }
+
+    private static boolean isDigit(char ch) {
+        //return Character.isDigit(ch);
+        return ch >= '0' && ch <= '9';
+    }
 }
@@ -58,4 +58,16 @@ public class SequentialDispatcher extends EventLoop {
     public void dispatch(Runnable r) {
         collectEvent(r);
     }
+
+    /**
+     * Queues the Runnable object for later execution on the
+     * processor thread, in the specified lane. Runnable objects in
+     * a more urgent lane are executed first.
+     *
+     * @param lane The lane: {@link #LANE_VISIBLE}, {@link #LANE_DEFAULT},
+     * or {@link #LANE_PREFETCH}.
+     */
+    public void dispatch(Runnable r, int lane) {
+        collectEvent(r, lane);
+    }
 }
@@ -20,12 +20,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.DefaultRowSorter;
 import javax.swing.RowFilter;
 import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
 import javax.swing.RowSorter.SortKey;
 import javax.swing.event.EventListenerList;
 import javax.swing.tree.TreeModel;
@@ -83,6 +88,33 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
     private boolean sortsOnUpdates;
 
+    private int bulkSortThreshold = 10000;
+
+    /**
+     * The sorters of collapsed nodes that may be discarded,
+     * least recently collapsed first.
+     */
+    private LinkedHashSet<NodeSorter> collapsedSorters = new LinkedHashSet<NodeSorter>();
+
+    private int maxCollapsedSorters = 100;
+
+    private boolean filtersAsynchronously;
+
+    /**
+     * Incremented each time the row filter is set, so that the
+     * results of an earlier filter pass can be recognized.
+     */
+    private int filterGeneration;
+
+    /** The filter pass in progress, if any. */
+    private FilterPass filterPass;
+
+    /**
+     * The columns read by the row filters of earlier filter passes,
+     * which are copied before a pass is started.
+     */
+    private boolean[] filterColumns = new boolean[0];
+
     @Override
     public NodeSorter getRowSorter(Object node) {
         return sorters.get(node);
@@ -119,6 +151,88 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
         return maxSortKeys;
     }
 
+    public int getBulkSortThreshold() {
+        return bulkSortThreshold;
+    }
+
+    /**
+     * Sets the number of children at or above which the children
+     * of a node are sorted by extracting their sort keys once,
+     * rather than fetching the values in each comparison. The keys
+     * are extracted on the event dispatch thread, and the rows are
+     * sorted on a background thread; the previous order remains in
+     * effect until the new order is installed on the event dispatch
+     * thread. String keys compared by a Collator are converted to
+     * CollationKeys in parallel. If every key is a CollationKey or
+     * is compared by its natural order, the rows are sorted by a
+     * parallel merge sort. Client comparators are called on a single
+     * background thread, and must be safe to use there. Bulk sorting
+     * is not used when a row filter is installed.
+     *
+     * @param threshold the minimum number of children,
+     *        or Integer.MAX_VALUE to disable bulk sorting
+     */
+    public void setBulkSortThreshold(int threshold) {
+        if (threshold < 2)
+            throw new IllegalArgumentException("Invalid threshold");
+        bulkSortThreshold = threshold;
+    }
+
+    public int getMaxCollapsedSorters() {
+        return maxCollapsedSorters;
+    }
+
+    /**
+     * Sets the number of sorters of collapsed nodes that are
+     * retained. When a node is collapsed and the limit is exceeded,
+     * the sorters of the least recently collapsed nodes are
+     * discarded, along with the sorters of their descendants.
+     * A discarded sorter is recreated and sorted when its node is
+     * expanded again. Only sorters whose subtrees have no sort
+     * keys, row filter, comparators, or sort cycle of their own
+     * are discarded, as these settings cannot be recreated.
+     *
+     * @param max the number of sorters to retain,
+     *        or Integer.MAX_VALUE to retain all sorters
+     */
+    public void setMaxCollapsedSorters(int max) {
+        if (max < 0)
+            throw new IllegalArgumentException("Invalid max");
+        maxCollapsedSorters = max;
+        evictCollapsedSorters();
+    }
+
+    /**
+     * Returns the number of node sorters, including the sorters
+     * of collapsed nodes that have been retained.
+     */
+    public int getSorterCount() {
+        return sorters.size();
+    }
+
+    /**
+     * Returns the number of entries in the row index mappings of
+     * all node sorters. A sorter that is sorted or filtered holds
+     * a mapping in each direction for each child of its node.
+     */
+    public long getIndexEntryCount() {
+        long count = 0;
+        for (NodeSorter s : sorters.values())
+            count += s.getIndexEntryCount();
+        return count;
+    }
+
+    /**
+     * Returns the number of column values cached by all node
+     * sorters, including cached string values.
+     */
+    public long getCachedValueCount() {
+        long count = 0;
+        for (NodeSorter s : sorters.values())
+            count += s.getTreeTableModelWrapper().getCachedValueCount();
+        return count;
+    }
+
     public void setMaxSortKeys(int max) {
         if (max < 1)
             throw new IllegalArgumentException("Invalid max");
@@ -165,17 +279,76 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
         return Collator.getInstance();
     }
 
+    /**
+     * Sets the row filter. If filtering is asynchronous, the filter
+     * is installed when it has been evaluated for the children of
+     * the expanded nodes; until then, the previous filter remains
+     * in effect. Setting the filter again before then cancels the
+     * evaluation of the previous filter.
+     *
+     * @see #setFiltersAsynchronously(boolean)
+     */
     public void setRowFilter(RowFilter<? super T, ? super I> filter) {
-        if (filter == null && rowFilter == null)
+        if (filter == null && rowFilter == null && filterPass == null)
+            return;
+        filterGeneration++;
+        cancelFilterPass();
+        if (filtersAsynchronously && filter != null) {
+            filterPass = new FilterPass(filter, filterGeneration);
+            ForkJoinPool.commonPool().execute(filterPass);
             return;
+        }
         rowFilter = filter;
         sort();
     }
 
+    /**
+     * Returns the row filter that is in effect, which does not
+     * include a filter that is being evaluated asynchronously.
+     */
     public RowFilter<? super T, ? super I> getRowFilter() {
         return rowFilter;
     }
 
+    public boolean getFiltersAsynchronously() {
+        return filtersAsynchronously;
+    }
+
+    /**
+     * Sets whether row filters are evaluated on background threads.
+     * When a row filter is set, the values of the children of the
+     * expanded nodes that the filter reads are copied, and the
+     * filter is evaluated using the copies, in parallel. The copies
+     * are reused when the filter is set again, until the rows
+     * change. The results are installed on the event dispatch
+     * thread, in a single sort. The filter must be safe to use on
+     * other threads and must not use the model of an entry. Sorters
+     * of nodes that are expanded later, or that have a row filter
+     * of their own, evaluate the filter in the usual way.
+     * <p>
+     * If asynchronous filtering is disabled while a filter is being
+     * evaluated, the filter is installed synchronously.
+     */
+    public void setFiltersAsynchronously(boolean b) {
+        filtersAsynchronously = b;
+        if (!b && filterPass != null)
+            setRowFilter(filterPass.filter);
+    }
+
+    /**
+     * Returns true if a row filter is being evaluated asynchronously.
+     */
+    public boolean isFilterPending() {
+        return filterPass != null;
+    }
+
+    private void cancelFilterPass() {
+        if (filterPass != null) {
+            filterPass.cancelled = true;
+            filterPass = null;
+        }
+    }
+
     @Override
     public List<? extends SortKey> getSortKeys() {
         return sortKeys;
@@ -256,6 +429,8 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
     }
 
     public void sort() {
+        for (NodeSorter sorter : sorters.values())
+            sorter.sortNeeded = true;
         getRowSorter(treeModel.getRoot()).sort(true);
         fireSorterChanged();
     }
@@ -293,10 +468,13 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
     public void structureChanged(TreePath path, boolean newRoot) {
         if (newRoot) {
             sorters.clear();
+            collapsedSorters.clear();
             sorters.put(treeModel.getRoot(), new NodeSorter(treeModel.getRoot()));
         } else {
             NodeSorter s = getRowSorter(path.getLastPathComponent());
             s.removeAllChildren(sorters);
+            s.rowsChanged();
+            s.getTreeTableModelWrapper().invalidate();
             // TODO: rebuild here?
         }
     }
@@ -312,7 +490,14 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
     public void setVisible(TreePath path, List<TreePath> subPaths, boolean visible) {
         NodeSorter sorter = getRowSorter(path);
         sorter.setVisible(visible);
-        if (visible) {
+        if (!visible) {
+            if (sorter.getParent() != null) {
+                collapsedSorters.remove(sorter);
+                collapsedSorters.add(sorter);
+                evictCollapsedSorters();
+            }
+        } else {
+            collapsedSorters.remove(sorter);
             for (TreePath p : subPaths) {
                 NodeSorter s = sorter;
                 for (int idx=path.getPathCount(), count=p.getPathCount(); idx<count; idx++) {
@@ -325,6 +510,293 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
         }
     }
 
+    /**
+     * Evaluates a row filter for the children of the expanded nodes
+     * on background threads, using copies of their values. Only the
+     * columns that the filter reads are copied. A column that has
+     * not been copied is copied on the event dispatch thread when
+     * the filter first reads it, and the pass is then evaluated
+     * again. The copies are retained by the sorters and reused by
+     * later passes until the rows change. The results are installed
+     * on the event dispatch thread unless the pass has been
+     * superseded.
+     */
+    private class FilterPass extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        FilterPass(RowFilter<? super T, ? super I> f, int g) {
+            filter = f;
+            generation = g;
+            List<NodeSorter> list = new ArrayList<NodeSorter>();
+            getRowSorter(treeModel.getRoot()).collectVisible(list);
+            snapshots = new ArrayList<FilterSnapshot>(list.size());
+            for (NodeSorter s : list) {
+                FilterSnapshot snapshot = s.getFilterSnapshot();
+                for (int col=0; col<filterColumns.length; col++) {
+                    if (filterColumns[col])
+                        snapshot.copyColumn(col);
+                }
+                snapshots.add(snapshot);
+            }
+            results = new boolean[snapshots.size()][];
+            for (int i=0; i<results.length; i++)
+                results[i] = new boolean[snapshots.get(i).nodes.length];
+            missingColumns = new boolean[columnModel.getColumnCount()];
+        }
+
+        final RowFilter<? super T, ? super I> filter;
+
+        final int generation;
+
+        final List<FilterSnapshot> snapshots;
+
+        final boolean[][] results;
+
+        /** The columns that the filter read and that were not copied. */
+        final boolean[] missingColumns;
+
+        volatile boolean cancelled;
+
+        private boolean failed;
+
+        @Override
+        protected void compute() {
+            List<FilterTask> tasks = new ArrayList<FilterTask>();
+            for (int i=0; i<results.length; i++)
+                tasks.add(new FilterTask(this, snapshots.get(i), results[i], 0, results[i].length));
+            try {
+                invokeAll(tasks);
+            } catch (MissingColumnException ex) {
+                // evaluate the filter again after copying the column
+            } catch (RuntimeException ex) {
+                // evaluate the filter again on the event dispatch thread,
+                // where the failure will be reported
+                failed = true;
+            }
+            if (!cancelled) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        install();
+                    }
+                });
+            }
+        }
+
+        synchronized void columnMissing(int column) {
+            missingColumns[column] = true;
+        }
+
+        private synchronized boolean isColumnMissing() {
+            for (boolean b : missingColumns) {
+                if (b)
+                    return true;
+            }
+            return false;
+        }
+
+        private void install() {
+            if (filterPass != this)
+                return;
+            if (!failed && isColumnMissing()) {
+                synchronized (this) {
+                    if (filterColumns.length != missingColumns.length)
+                        filterColumns = new boolean[missingColumns.length];
+                    for (int col=0; col<missingColumns.length; col++)
+                        filterColumns[col] |= missingColumns[col];
+                }
+                filterPass = new FilterPass(filter, generation);
+                ForkJoinPool.commonPool().execute(filterPass);
+                return;
+            }
+            filterPass = null;
+            rowFilter = filter;
+            if (!failed) {
+                for (int i=0; i<results.length; i++) {
+                    FilterSnapshot s = snapshots.get(i);
+                    NodeSorter sorter = s.sorter;
+                    if (sorters.get(sorter.getNode()) == sorter
+                            && sorter.changeCount == s.changeCount) {
+                        sorter.filterResults = results[i];
+                        sorter.filterResultsGeneration = generation;
+                    }
+                }
+            }
+            sort();
+        }
+    }
+
+    /**
+     * Thrown when a row filter evaluated by a filter pass reads a
+     * column that has not been copied.
+     */
+    private static class MissingColumnException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        MissingColumnException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The children of a node and the values of some of their columns,
+     * copied for filter passes. The snapshot is valid until the rows
+     * of the sorter change. Columns are copied on the event dispatch
+     * thread, before a pass that uses them is started.
+     */
+    private class FilterSnapshot {
+
+        FilterSnapshot(NodeSorter s) {
+            sorter = s;
+            changeCount = s.changeCount;
+            NodeSorter.TreeTableWrapper wrapper = s.getTreeTableModelWrapper();
+            int rowCount = wrapper.getRowCount();
+            nodes = new Object[rowCount];
+            values = new Object[wrapper.getColumnCount()][];
+            for (int row=0; row<rowCount; row++)
+                nodes[row] = wrapper.getIdentifier(row);
+        }
+
+        final NodeSorter sorter;
+
+        final int changeCount;
+
+        final Object[] nodes;
+
+        final Object[][] values;
+
+        boolean isValid() {
+            return sorter.changeCount == changeCount
+                    && values.length == columnModel.getColumnCount();
+        }
+
+        /**
+         * Copies the values of a column, if not already copied.
+         * The values are obtained from the column model, so that the
+         * value caches of the sorter are not filled.
+         */
+        void copyColumn(int col) {
+            if (col < values.length && values[col] == null) {
+                Object[] v = new Object[nodes.length];
+                for (int row=0; row<v.length; row++)
+                    v[row] = columnModel.getValueAt(nodes[row], col);
+                values[col] = v;
+            }
+        }
+    }
+
+    private class FilterTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // Minimum number of rows evaluated by one task
+        private static final int CHUNK_SIZE = 1024;
+
+        FilterTask(FilterPass p, FilterSnapshot s, boolean[] r, int st, int e) {
+            pass = p;
+            snapshot = s;
+            results = r;
+            start = st;
+            end = e;
+        }
+
+        private final FilterPass pass;
+
+        private final FilterSnapshot snapshot;
+
+        private final boolean[] results;
+
+        private final int start;
+
+        private final int end;
+
+        @Override
+        protected void compute() {
+            if (pass.cancelled)
+                return;
+            if (end - start > CHUNK_SIZE) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new FilterTask(pass, snapshot, results, start, middle),
+                        new FilterTask(pass, snapshot, results, middle, end));
+                return;
+            }
+            SnapshotEntry entry = new SnapshotEntry(pass, snapshot);
+            RowFilter<? super T, ? super I> filter = pass.filter;
+            for (int row=start; row<end; row++) {
+                entry.row = row;
+                results[row] = filter.include(entry);
+            }
+        }
+    }
+
+    private class SnapshotEntry extends RowFilter.Entry<T,I> {
+
+        SnapshotEntry(FilterPass p, FilterSnapshot s) {
+            pass = p;
+            snapshot = s;
+        }
+
+        private final FilterPass pass;
+
+        private final FilterSnapshot snapshot;
+
+        int row;
+
+        @Override
+        public T getModel() {
+            return treeModel;
+        }
+
+        @Override
+        public int getValueCount() {
+            return snapshot.values.length;
+        }
+
+        @Override
+        public Object getValue(int index) {
+            Object[] v = snapshot.values[index];
+            if (v == null) {
+                pass.columnMissing(index);
+                throw new MissingColumnException();
+            }
+            return v[row];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public I getIdentifier() {
+            return (I)snapshot.nodes[row];
+        }
+    }
+
+    /**
+     * Discards the sorters of the least recently collapsed nodes
+     * until the limit is satisfied. A sorter that cannot be
+     * discarded does not count against the limit.
+     */
+    private void evictCollapsedSorters() {
+        int retained = 0;
+        Iterator<NodeSorter> i = collapsedSorters.iterator();
+        while (collapsedSorters.size() - retained > maxCollapsedSorters && i.hasNext()) {
+            NodeSorter s = i.next();
+            if (s.isVisible() || sorters.get(s.getNode()) != s) {
+                i.remove();
+            } else if (!s.isDiscardable()) {
+                retained++;
+            } else {
+                i.remove();
+                s.getParent().children.remove(s.getNode());
+                sorters.remove(s.getNode());
+                s.removeAllChildren(sorters);
+                // the iterator is invalid if descendants were removed
+                i = collapsedSorters.iterator();
+                for (int n=0; n<retained; n++)
+                    i.next();
+            }
+        }
+    }
+
     public class NodeSorter extends DefaultRowSorter<T,I> implements SortCycle {
 
         public NodeSorter(Object root) {
@@ -349,8 +821,8 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
         private boolean visible;
 
         protected Map<Object,NodeSorter> createChildren() {
-            return new IdentityHashMap<Object,NodeSorter>(
-                    getModel().getChildCount(getNode()));
+            // Usually only a few children are expanded
+            return new IdentityHashMap<Object,NodeSorter>();
         }
 
         public NodeSorter getParent() {
@@ -402,6 +874,8 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
         @Override
         public List<? extends SortKey> getSortKeys() {
+            if (resettingOrder)
+                return Collections.<SortKey>emptyList();
             List<? extends SortKey> k = super.getSortKeys();
             return !k.isEmpty() ? k : getMaster().getSortKeys();
         }
@@ -417,6 +891,8 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
             RowFilter<? super T, ? super I> f = super.getRowFilter();
             if (f != null)
                 return f;
+            if (usingFilterResults)
+                return resultFilter;
             return getMaster().getRowFilter();
         }
 
@@ -462,14 +938,396 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
         private boolean firePathEvent = true;
 
-        void sort(boolean sortChildren) {
+        /**
+         * True if the view order may not reflect the current sort keys,
+         * filter, or row values. Changes to the rows of a node are applied
+         * incrementally as they are reported, so a sorter that has been
+         * sorted need not be sorted again when it becomes visible.
+         */
+        private boolean sortNeeded = true;
+
+        /**
+         * The view order computed by the last bulk sort, which is used
+         * instead of the order maintained by DefaultRowSorter. The order
+         * of DefaultRowSorter is then the model order. The bulk order is
+         * discarded when the rows are sorted again.
+         */
+        private int[] bulkViewToModel;
+
+        private int[] bulkModelToView;
+
+        /**
+         * The bulk order that was discarded by the sort in progress,
+         * which is reported as the previous order.
+         */
+        private int[] previousBulkViewToModel;
+
+        /**
+         * True while the order of DefaultRowSorter is being reset to
+         * the model order. The sort keys are then reported as empty,
+         * and no event is fired.
+         */
+        private boolean resettingOrder;
+
+        /** Incremented each time the rows are sorted. */
+        private int sortCount;
+
+        /**
+         * Incremented when rows are inserted or removed, so that a
+         * bulk order can be recognized as out of date.
+         */
+        private int structureCount;
+
+        /** The structure count when the bulk order was installed. */
+        private int bulkStructureCount;
+
+        /** The bulk sort in progress, if any. */
+        private BulkSortTask bulkSortTask;
+
+        /**
+         * Incremented when the rows change, so that the results of
+         * a filter pass can be recognized as out of date.
+         */
+        private int changeCount;
+
+        /**
+         * Whether each model row is accepted by the row filter of
+         * the master, as evaluated by an asynchronous filter pass.
+         * The results are valid until the rows change or the row
+         * filter is set again.
+         */
+        private boolean[] filterResults;
+
+        private int filterResultsGeneration;
+
+        /**
+         * The copies of the rows used by filter passes, which are
+         * discarded when the rows change.
+         */
+        private FilterSnapshot filterSnapshot;
+
+        /**
+         * True while the view is being created from the filter results.
+         * The model rows are then identified by their indices.
+         */
+        private boolean usingFilterResults;
+
+        private final RowFilter<Object,Object> resultFilter = new RowFilter<Object,Object>() {
+            @Override
+            public boolean include(Entry<?,?> entry) {
+                return filterResults[(Integer)entry.getIdentifier()];
+            }
+        };
+
+        private boolean hasFilterResults() {
+            return filterResults != null
+                    && filterResultsGeneration == getMaster().filterGeneration
+                    && filterResults.length == getModelWrapper().getRowCount()
+                    && super.getRowFilter() == null
+                    && getMaster().getRowFilter() != null;
+        }
+
+        private void rowsChanged() {
+            changeCount++;
+            filterResults = null;
+            filterSnapshot = null;
+        }
+
+        FilterSnapshot getFilterSnapshot() {
+            if (filterSnapshot == null || !filterSnapshot.isValid())
+                filterSnapshot = new FilterSnapshot(this);
+            return filterSnapshot;
+        }
+
+        void collectVisible(List<NodeSorter> list) {
             if (!isVisible())
                 return;
-            firePathEvent = false;
+            if (super.getRowFilter() == null)
+                list.add(this);
+            for (NodeSorter s : children.values())
+                s.collectVisible(list);
+        }
+
+        @Override
+        public void sort() {
+            sortCount++;
+            bulkSortTask = null;
+            usingFilterResults = hasFilterResults();
+            try {
+                if (!startBulkSort())
+                    defaultSort();
+            } finally {
+                usingFilterResults = false;
+            }
+            sortNeeded = false;
+        }
+
+        /**
+         * Discards the bulk order, if any, and sorts the rows using
+         * DefaultRowSorter.
+         */
+        private void defaultSort() {
+            previousBulkViewToModel = bulkViewToModel;
+            bulkViewToModel = null;
+            bulkModelToView = null;
             try {
                 super.sort();
             } finally {
-                firePathEvent = true;
+                previousBulkViewToModel = null;
+            }
+        }
+
+        @Override
+        public int convertRowIndexToModel(int index) {
+            int[] order = bulkViewToModel;
+            if (order == null)
+                return super.convertRowIndexToModel(index);
+            if (index < 0 || index >= order.length)
+                throw new IndexOutOfBoundsException("Invalid index");
+            return order[index];
+        }
+
+        @Override
+        public int convertRowIndexToView(int index) {
+            int[] order = bulkModelToView;
+            if (order == null)
+                return super.convertRowIndexToView(index);
+            if (index < 0 || index >= order.length)
+                throw new IndexOutOfBoundsException("Invalid index");
+            return order[index];
+        }
+
+        /**
+         * Installs the view order computed by a bulk sort. The order of
+         * DefaultRowSorter is reset to the model order, which does not
+         * compare rows, so that it does not need to be maintained as the
+         * rows change. A change to the rows sorts them again.
+         */
+        private void installBulkOrder(int[] viewToModel) {
+            int[] last = previousBulkViewToModel;
+            if (last == null) {
+                last = new int[super.getViewRowCount()];
+                for (int view=0; view<last.length; view++)
+                    last[view] = super.convertRowIndexToModel(view);
+            }
+            resettingOrder = true;
+            try {
+                super.sort();
+            } finally {
+                resettingOrder = false;
+            }
+            int[] modelToView = new int[viewToModel.length];
+            for (int view=0; view<viewToModel.length; view++)
+                modelToView[viewToModel[view]] = view;
+            bulkViewToModel = viewToModel;
+            bulkModelToView = modelToView;
+            bulkStructureCount = structureCount;
+            fireRowSorterChanged(last);
+        }
+
+        /**
+         * Sorts the rows again after a change, if they were in a bulk
+         * order that the change did not replace.
+         */
+        private void sortAfterChange(boolean wasBulkOrdered, int lastSortCount) {
+            if (wasBulkOrdered && sortCount == lastSortCount) {
+                if (isVisible()) {
+                    sort();
+                } else {
+                    bulkViewToModel = null;
+                    bulkModelToView = null;
+                    sortNeeded = true;
+                }
+            }
+        }
+
+        /**
+         * Sorts a large number of rows by extracting the sort keys
+         * into arrays and sorting the row indices using the keys on
+         * a background thread. The sorted indices are installed as
+         * the view order when the sort completes, unless the rows
+         * have been sorted again or rows have been inserted or
+         * removed. Until then, the current order remains in effect.
+         *
+         * @return false if bulk sorting is not applicable
+         */
+        private boolean startBulkSort() {
+            TreeTableWrapper wrapper = getTreeTableModelWrapper();
+            int rowCount = wrapper.getRowCount();
+            List<? extends SortKey> keys = getSortKeys();
+            if (rowCount < getMaster().getBulkSortThreshold() || getRowFilter() != null
+                    || keys.isEmpty() || keys.get(0).getSortOrder() == SortOrder.UNSORTED)
+                return false;
+
+            // An unsorted key orders rows by model index, as do
+            // the comparisons of rows whose keys are all equal
+            int keyCount = 0;
+            while (keyCount < keys.size()
+                    && keys.get(keyCount).getSortOrder() != SortOrder.UNSORTED)
+                keyCount++;
+
+            Object[][] values = new Object[keyCount][];
+            Comparator[] comparators = new Comparator[keyCount];
+            boolean[] descending = new boolean[keyCount];
+            for (int k=0; k<keyCount; k++) {
+                SortKey key = keys.get(k);
+                int column = key.getColumn();
+                boolean toString = useToString(column);
+                Object[] v = new Object[rowCount];
+                for (int row=0; row<rowCount; row++)
+                    v[row] = toString ? wrapper.getStringValueAt(row, column)
+                            : wrapper.getValueAt(row, column);
+                Comparator<?> c = getComparator(column);
+                if (c == null)
+                    c = Collator.getInstance();
+                values[k] = v;
+                comparators[k] = c;
+                descending[k] = key.getSortOrder() == SortOrder.DESCENDING;
+            }
+
+            // Only a bulk order that matches the rows can remain in
+            // effect while the sort is in progress. The order of
+            // DefaultRowSorter may not have been updated for the rows.
+            if (bulkViewToModel == null || bulkStructureCount != structureCount)
+                installModelOrder();
+
+            bulkSortTask = new BulkSortTask(values, comparators, descending);
+            ForkJoinPool.commonPool().execute(bulkSortTask);
+            return true;
+        }
+
+        /**
+         * Replaces the current order with the model order, without
+         * comparing rows.
+         */
+        private void installModelOrder() {
+            int[] last = bulkViewToModel;
+            boolean isModelOrder = false;
+            if (last == null) {
+                last = new int[super.getViewRowCount()];
+                isModelOrder = last.length == getModelRowCount();
+                for (int view=0; view<last.length; view++) {
+                    last[view] = super.convertRowIndexToModel(view);
+                    isModelOrder &= last[view] == view;
+                }
+            }
+            bulkViewToModel = null;
+            bulkModelToView = null;
+            resettingOrder = true;
+            try {
+                super.sort();
+            } finally {
+                resettingOrder = false;
+            }
+            if (!isModelOrder)
+                fireRowSorterChanged(last);
+        }
+
+        /**
+         * Installs the order computed by a bulk sort, unless it is
+         * out of date.
+         */
+        private void bulkSortCompleted(BulkSortTask task) {
+            if (bulkSortTask != task)
+                return;
+            bulkSortTask = null;
+            if (task.failed) {
+                // sort again here, where the failure will be reported
+                sortCount++;
+                defaultSort();
+            } else if (!isVisible()) {
+                sortNeeded = true;
+            } else {
+                if (bulkViewToModel != null)
+                    previousBulkViewToModel = bulkViewToModel;
+                try {
+                    installBulkOrder(task.viewToModel);
+                } finally {
+                    previousBulkViewToModel = null;
+                }
+            }
+        }
+
+        /**
+         * Sorts the row indices using extracted sort keys, and reports
+         * the result on the event dispatch thread.
+         */
+        private class BulkSortTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            BulkSortTask(Object[][] v, Comparator[] c, boolean[] d) {
+                values = v;
+                comparators = c;
+                descending = d;
+                sortCount = NodeSorter.this.sortCount;
+                structureCount = NodeSorter.this.structureCount;
+            }
+
+            private final Object[][] values;
+
+            private final Comparator[] comparators;
+
+            private final boolean[] descending;
+
+            final int sortCount;
+
+            final int structureCount;
+
+            int[] viewToModel;
+
+            boolean failed;
+
+            @Override
+            protected void compute() {
+                try {
+                    boolean parallel = true;
+                    for (int k=0; k<values.length; k++) {
+                        Comparator<?> c = comparators[k];
+                        if (c instanceof Collator && createCollationKeys((Collator)c, values[k])) {
+                            comparators[k] = COMPARABLE_COMPARATOR;
+                        } else if (c != COMPARABLE_COMPARATOR) {
+                            // Client comparators are called on one thread
+                            parallel = false;
+                        }
+                    }
+                    int rowCount = values[0].length;
+                    Integer[] order = new Integer[rowCount];
+                    for (int row=0; row<rowCount; row++)
+                        order[row] = row;
+                    Comparator<Integer> c = new KeyComparator(values, comparators, descending);
+                    if (parallel) {
+                        Arrays.parallelSort(order, c);
+                    } else {
+                        Arrays.sort(order, c);
+                    }
+                    int[] result = new int[rowCount];
+                    for (int view=0; view<rowCount; view++)
+                        result[view] = order[view];
+                    viewToModel = result;
+                } catch (RuntimeException ex) {
+                    failed = true;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (sortCount == NodeSorter.this.sortCount
+                                && structureCount == NodeSorter.this.structureCount)
+                            bulkSortCompleted(BulkSortTask.this);
+                    }
+                });
+            }
+        }
+
+        void sort(boolean sortChildren) {
+            if (!isVisible())
+                return;
+            if (sortNeeded) {
+                firePathEvent = false;
+                try {
+                    sort();
+                } finally {
+                    firePathEvent = true;
+                }
             }
             if (!sortChildren)
                 return;
@@ -479,6 +1337,10 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
         @Override
         protected void fireRowSorterChanged(int[] lastRowIndexToModel) {
+            if (resettingOrder)
+                return;
+            if (previousBulkViewToModel != null)
+                lastRowIndexToModel = previousBulkViewToModel;
             super.fireRowSorterChanged(lastRowIndexToModel);
             if (firePathEvent)
                 getMaster().fireRowSorterChanged(getPathToRoot());
@@ -491,19 +1353,102 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
                     .pathByAddingChild(getNode());
         }
 
+        @Override
+        public void modelStructureChanged() {
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().invalidate();
+            super.modelStructureChanged();
+            sortAfterChange(bulk, count);
+        }
+
         public void allRowsChanged() {
-            getTreeTableModelWrapper().updateRowCount();
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().invalidate();
             super.allRowsChanged();
         }
 
         public void rowsDeleted(int firstRow, int endRow) {
-            getTreeTableModelWrapper().updateRowCount();
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().rowsDeleted(range(firstRow, endRow));
             super.rowsDeleted(firstRow, endRow);
+            sortAfterChange(bulk, count);
         }
 
         public void rowsInserted(int firstRow, int endRow) {
-            getTreeTableModelWrapper().updateRowCount();
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().rowsInserted(range(firstRow, endRow));
             super.rowsInserted(firstRow, endRow);
+            sortAfterChange(bulk, count);
+        }
+
+        /**
+         * Notifies the sorter that rows have been deleted from
+         * the model. Unlike {@link #rowsDeleted(int, int)}, the
+         * rows need not be contiguous. The cached values of the
+         * remaining rows are retained.
+         *
+         * @param rows the former model indices of the deleted rows,
+         *        in ascending order
+         */
+        public void rowsDeleted(int[] rows) {
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().rowsDeleted(rows);
+            if (isContiguous(rows)) {
+                super.rowsDeleted(rows[0], rows[rows.length-1]);
+            } else {
+                super.allRowsChanged();
+            }
+            sortAfterChange(bulk, count);
+        }
+
+        /**
+         * Notifies the sorter that rows have been inserted into
+         * the model. Unlike {@link #rowsInserted(int, int)}, the
+         * rows need not be contiguous. The cached values of the
+         * existing rows are retained, so that sorting fetches
+         * only the values of the inserted rows.
+         *
+         * @param rows the model indices of the inserted rows,
+         *        in ascending order
+         */
+        public void rowsInserted(int[] rows) {
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            structureCount++;
+            getTreeTableModelWrapper().rowsInserted(rows);
+            if (isContiguous(rows)) {
+                super.rowsInserted(rows[0], rows[rows.length-1]);
+            } else {
+                super.allRowsChanged();
+            }
+            sortAfterChange(bulk, count);
+        }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow) {
+            boolean bulk = bulkViewToModel != null || bulkSortTask != null;
+            int count = sortCount;
+            rowsChanged();
+            getTreeTableModelWrapper().invalidate(firstRow, endRow);
+            if (!getSortsOnUpdates())
+                sortNeeded = true;
+            super.rowsUpdated(firstRow, endRow);
+            if (getSortsOnUpdates())
+                sortAfterChange(bulk, count);
         }
 
         public void setVisible(boolean vis) {
@@ -518,9 +1463,42 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
             return visible;
         }
 
+        /**
+         * Returns true if this sorter and the sorters of its
+         * descendants have no settings of their own, so that
+         * they can be recreated on demand.
+         */
+        boolean isDiscardable() {
+            if (!super.getSortKeys().isEmpty() || super.getRowFilter() != null
+                    || super.getMaxSortKeys() != Integer.MAX_VALUE
+                    || !ASCENDING_DESCENDING_UNSORTED.equals(sortCycle))
+                return false;
+            for (int col=getModelWrapper().getColumnCount(); --col>=0;) {
+                if (super.getComparator(col) != null)
+                    return false;
+            }
+            for (NodeSorter s : children.values()) {
+                if (!s.isDiscardable())
+                    return false;
+            }
+            return true;
+        }
+
+        int getIndexEntryCount() {
+            if (sortNeeded)
+                return 0;
+            List<? extends SortKey> keys = getSortKeys();
+            boolean sorted = !keys.isEmpty()
+                    && keys.get(0).getSortOrder() != SortOrder.UNSORTED;
+            if (!sorted && getRowFilter() == null)
+                return 0;
+            return getModelRowCount() + getViewRowCount();
+        }
+
         void removeAllChildren(Map<Object,NodeSorter> map) {
             for (Map.Entry<Object,NodeSorter> entry : children.entrySet()) {
                 map.remove(entry.getKey());
+                collapsedSorters.remove(entry.getValue());
                 entry.getValue().removeAllChildren(map);
             }
             children.clear();
@@ -529,11 +1507,21 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
         void remove(Object[] childNodes, Map<Object,NodeSorter> map) {
             for (Object node : childNodes) {
                 NodeSorter s = children.remove(node);
-                if (s != null)
+                if (s != null) {
+                    map.remove(node);
+                    collapsedSorters.remove(s);
                     s.removeAllChildren(map);
+                }
             }
         }
 
+        /**
+         * Caches the values of the child nodes so that comparisons
+         * do not fetch them from the tree and column models. The
+         * cache is maintained as rows are inserted, deleted and
+         * updated, so that sorting again fetches only the values
+         * of rows that have changed.
+         */
         protected class TreeTableWrapper extends ModelWrapper<T,I> {
 
             public TreeTableWrapper(Object n) {
@@ -545,6 +1533,10 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
             private int rowCount;
 
+            private final ValueCache values = new ValueCache();
+
+            private final ValueCache strings = new ValueCache();
+
             public Object getNode() {
                 return node;
             }
@@ -560,6 +1552,8 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
             @Override
             public I getIdentifier(int row) {
+                if (usingFilterResults)
+                    return (I)Integer.valueOf(row);
                 return (I)treeModel.getChild(node, row);
             }
 
@@ -583,8 +1577,301 @@ public class DefaultTreeTableSorter<T extends TreeModel, C extends TreeColumnMod
 
             @Override
             public Object getValueAt(int row, int column) {
-                return columnModel.getValueAt(treeModel.getChild(node, row), column);
+                Object[] cache = values.get(column, getColumnCount(), rowCount);
+                if (row >= cache.length)
+                    return columnModel.getValueAt(treeModel.getChild(node, row), column);
+                Object value = cache[row];
+                if (value == null) {
+                    value = columnModel.getValueAt(treeModel.getChild(node, row), column);
+                    cache[row] = value != null ? value : NULL_VALUE;
+                    return value;
+                }
+                return value != NULL_VALUE ? value : null;
+            }
+
+            @Override
+            public String getStringValueAt(int row, int column) {
+                Object[] cache = strings.get(column, getColumnCount(), rowCount);
+                if (row >= cache.length)
+                    return super.getStringValueAt(row, column);
+                String value = (String)cache[row];
+                if (value == null) {
+                    value = super.getStringValueAt(row, column);
+                    cache[row] = value;
+                }
+                return value;
+            }
+
+            /**
+             * Returns the number of value slots allocated by the caches.
+             */
+            int getCachedValueCount() {
+                return values.size() + strings.size();
+            }
+
+            /**
+             * Discards all cached values and updates the row count.
+             */
+            public void invalidate() {
+                updateRowCount();
+                values.clear();
+                strings.clear();
+            }
+
+            /**
+             * Discards the cached values of a range of rows.
+             */
+            public void invalidate(int firstRow, int endRow) {
+                values.invalidate(firstRow, endRow);
+                strings.invalidate(firstRow, endRow);
+            }
+
+            void rowsInserted(int[] rows) {
+                int oldRowCount = rowCount;
+                updateRowCount();
+                if (rowCount != oldRowCount + rows.length
+                        || !values.insert(rows, rowCount)
+                        || !strings.insert(rows, rowCount)) {
+                    values.clear();
+                    strings.clear();
+                }
+            }
+
+            void rowsDeleted(int[] rows) {
+                int oldRowCount = rowCount;
+                updateRowCount();
+                if (rowCount != oldRowCount - rows.length
+                        || !values.delete(rows, rowCount)
+                        || !strings.delete(rows, rowCount)) {
+                    values.clear();
+                    strings.clear();
+                }
+            }
+        }
+    }
+
+    private static int[] range(int firstRow, int endRow) {
+        int[] rows = new int[Math.max(endRow - firstRow + 1, 0)];
+        for (int i=0; i<rows.length; i++)
+            rows[i] = firstRow + i;
+        return rows;
+    }
+
+    private static boolean isContiguous(int[] rows) {
+        return rows.length > 0 && rows[rows.length-1] - rows[0] == rows.length - 1;
+    }
+
+    /**
+     * Replaces strings with collation keys, so that the strings are
+     * compared without decomposing them in each comparison. The keys
+     * are created in parallel, each task using its own collator.
+     *
+     * @return false if a value is not a string, in which case
+     *         the values are unchanged
+     */
+    private static boolean createCollationKeys(Collator collator, Object[] values) {
+        for (Object value : values) {
+            if (value != null && !(value instanceof String))
+                return false;
+        }
+        ForkJoinPool.commonPool().invoke(
+                new CollationKeyTask(collator, values, 0, values.length));
+        return true;
+    }
+
+    private static class CollationKeyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // Minimum number of keys created by one task
+        private static final int CHUNK_SIZE = 4096;
+
+        CollationKeyTask(Collator c, Object[] v, int s, int e) {
+            collator = c;
+            values = v;
+            start = s;
+            end = e;
+        }
+
+        private final Collator collator;
+
+        private final Object[] values;
+
+        private final int start;
+
+        private final int end;
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK_SIZE) {
+                Collator c = (Collator)collator.clone();
+                for (int i=start; i<end; i++) {
+                    if (values[i] != null)
+                        values[i] = c.getCollationKey((String)values[i]);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new CollationKeyTask(collator, values, start, middle),
+                        new CollationKeyTask(collator, values, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Compares model rows using extracted sort keys, in the same
+     * way as DefaultRowSorter compares rows using their values.
+     */
+    private static class KeyComparator implements Comparator<Integer> {
+
+        KeyComparator(Object[][] v, Comparator[] c, boolean[] d) {
+            values = v;
+            comparators = c;
+            descending = d;
+        }
+
+        private final Object[][] values;
+
+        private final Comparator[] comparators;
+
+        private final boolean[] descending;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Integer a, Integer b) {
+            int row1 = a;
+            int row2 = b;
+            for (int k=0; k<values.length; k++) {
+                Object v1 = values[k][row1];
+                Object v2 = values[k][row2];
+                int result;
+                if (v1 == null) {
+                    result = v2 == null ? 0 : -1;
+                } else if (v2 == null) {
+                    result = 1;
+                } else {
+                    result = comparators[k].compare(v1, v2);
+                }
+                if (descending[k])
+                    result = -result;
+                if (result != 0)
+                    return result;
+            }
+            return row1 - row2;
+        }
+    }
+
+    /** Represents a cached null value. */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Values of the children of a node, indexed by column and
+     * model row. A null element is a value that has not been
+     * fetched. The array for a column is created when a value
+     * in that column is first requested.
+     */
+    private static class ValueCache {
+
+        private Object[][] columns;
+
+        Object[] get(int column, int columnCount, int rowCount) {
+            if (columns == null || columns.length != columnCount)
+                columns = new Object[columnCount][];
+            Object[] cache = columns[column];
+            if (cache == null || cache.length != rowCount) {
+                cache = new Object[rowCount];
+                columns[column] = cache;
+            }
+            return cache;
+        }
+
+        void clear() {
+            columns = null;
+        }
+
+        int size() {
+            int count = 0;
+            if (columns != null) {
+                for (Object[] cache : columns) {
+                    if (cache != null)
+                        count += cache.length;
+                }
+            }
+            return count;
+        }
+
+        void invalidate(int firstRow, int endRow) {
+            if (columns == null)
+                return;
+            for (Object[] cache : columns) {
+                if (cache != null && firstRow >= 0 && firstRow <= endRow)
+                    Arrays.fill(cache, firstRow, Math.min(endRow + 1, cache.length), null);
+            }
+        }
+
+        /**
+         * Makes room for inserted rows, retaining the values of the
+         * existing rows.
+         *
+         * @param rows the new indices of the inserted rows, ascending
+         * @return false if the cache could not be updated
+         */
+        boolean insert(int[] rows, int rowCount) {
+            if (columns == null)
+                return true;
+            for (int c=0; c<columns.length; c++) {
+                Object[] cache = columns[c];
+                if (cache == null)
+                    continue;
+                if (cache.length != rowCount - rows.length)
+                    return false;
+                Object[] updated = new Object[rowCount];
+                int source = 0;
+                int target = 0;
+                for (int row : rows) {
+                    if (row < target || row >= rowCount)
+                        return false;
+                    int count = row - target;
+                    System.arraycopy(cache, source, updated, target, count);
+                    source += count;
+                    target = row + 1;
+                }
+                System.arraycopy(cache, source, updated, target, rowCount - target);
+                columns[c] = updated;
+            }
+            return true;
+        }
+
+        /**
+         * Removes the values of deleted rows, retaining the values of
+         * the remaining rows.
+         *
+         * @param rows the former indices of the deleted rows, ascending
+         * @return false if the cache could not be updated
+         */
+        boolean delete(int[] rows, int rowCount) {
+            if (columns == null)
+                return true;
+            for (int c=0; c<columns.length; c++) {
+                Object[] cache = columns[c];
+                if (cache == null)
+                    continue;
+                if (cache.length != rowCount + rows.length)
+                    return false;
+                Object[] updated = new Object[rowCount];
+                int source = 0;
+                int target = 0;
+                for (int row : rows) {
+                    if (row < source || row >= cache.length)
+                        return false;
+                    int count = row - source;
+                    System.arraycopy(cache, source, updated, target, count);
+                    target += count;
+                    source = row + 1;
+                }
+                System.arraycopy(cache, source, updated, target, cache.length - source);
+                columns[c] = updated;
             }
+            return true;
         }
     }
 }
@@ -34,6 +34,7 @@ import javax.swing.tree.*;
 import org.violetlib.aqua.AquaUtils;
 import org.violetlib.treetable.event.*;
 import org.violetlib.treetable.ui.BasicTreeTableUI;
+import org.violetlib.treetable.ui.InternalTableWithMargins;
 import org.violetlib.treetable.ui.TableInterface;
 import org.violetlib.treetable.ui.TreeInterface;
 import org.violetlib.treetable.ui.TreeTableUI;
@@ -72,7 +73,7 @@ public class TreeTable extends JComponent implements Scrollable {
 
     private TableColumnModel columnModel;
 
-    private JTable rowHeader;
+    private InternalTableWithMargins rowHeader;
 
     private TreeTableCellRenderer focusRenderer;
 
@@ -156,6 +157,16 @@ public class TreeTable extends JComponent implements Scrollable {
             tree.addTreeExpansionListener(adapter);
         if (addWillExpandLis)
             tree.addTreeWillExpandListener(adapter);
+        // The row header shares the row geometry of the table, which is replaced with the UI
+        if (rowHeader != null) {
+            rowHeader.setRowGeometry(table.getRowGeometry());
+            int ht = getRowHeight();
+            if (ht > 0) {
+                rowHeader.setRowHeight(ht);
+            } else {
+                updateRowHeaderHeights(0, getRowCount());
+            }
+        }
         if (getAutoCreateColumnHeader() && isDisplayable())
             configureEnclosingScrollPane();
     }
@@ -331,13 +342,17 @@ public class TreeTable extends JComponent implements Scrollable {
             scrollPane.setColumnHeaderView(null);
         if (getAutoCreateRowHeader()) {
             scrollPane.setRowHeaderView(null);
-            rowHeader = null;
+            if (rowHeader != null) {
+                rowHeader.setRowGeometry(null);
+                rowHeader = null;
+            }
         }
     }
 
     private void createRowHeader() {
         RowHeaderAdapter adapter = new RowHeaderAdapter(getTableModel());
-        rowHeader = new JTable(adapter, null, getRowSelectionModel());
+        rowHeader = new InternalTableWithMargins(adapter, null, getRowSelectionModel());
+        rowHeader.setRowGeometry(table.getRowGeometry());
         rowHeader.addPropertyChangeListener("UI", adapter);
         rowHeader.setAutoCreateColumnsFromModel(false);
         rowHeader.setRowMargin(0);
@@ -365,6 +380,11 @@ public class TreeTable extends JComponent implements Scrollable {
     }
 
     private void updateRowHeaderHeights(int fromRow, int toRow) {
+        if (rowHeader.getRowGeometry() != null) {
+            rowHeader.revalidate();
+            rowHeader.repaint();
+            return;
+        }
         for (int row=fromRow; row<toRow; row++) {
             rowHeader.setRowHeight(row, getRowHeight(row));
         }
@@ -554,6 +574,7 @@ public class TreeTable extends JComponent implements Scrollable {
     }
 
     public void invalidateAllRows() {
+        adapter.discardInvalidations();
         TreeModel model = adapter;
         TreePath root = new TreePath(model.getRoot());
         if (tree.isRootVisible())
@@ -577,12 +598,33 @@ public class TreeTable extends JComponent implements Scrollable {
         }
     }
 
+    /**
+     * Invalidates the bounds of the node identified by a path. The
+     * invalidations requested during one event dispatch are collected
+     * and reported together, with one notification for each parent
+     * node, when control returns to the event loop.
+     *
+     * @see #flushInvalidations()
+     */
     public void invalidatePath(TreePath path) {
-        adapter.invalidatePath(path);
-        if (getRowHeight() <= 0) {
-            int row = getRowForPath(path);
-            updateTableRowHeights(row, row+1);
-        }
+        adapter.addInvalidation(path);
+    }
+
+    /**
+     * Reports the pending invalidations immediately.
+     */
+    public void flushInvalidations() {
+        adapter.flushInvalidations();
+    }
+
+    /**
+     * Returns the number of invalidations that did not require a
+     * separate notification, because the node was already pending
+     * invalidation or shared a notification with other nodes of
+     * the same parent.
+     */
+    public long getCoalescedInvalidationCount() {
+        return adapter.coalescedInvalidationCount;
     }
 
     /**
@@ -597,11 +639,20 @@ public class TreeTable extends JComponent implements Scrollable {
      * Sync table row heights to corresponding tree row height
      * for rows <code>fromRow</code> (inclusive) to
      * <code>toRow</code> exclusive.
+     * <p>
+     * If the table obtains its row heights from the row geometry
+     * of the tree, no heights are copied. The table is revalidated
+     * and repainted once.
      */
     protected void updateTableRowHeights(int fromRow, int toRow) {
         assert (tree.getRowHeight() <= 0);
-        for (int row=toRow; --row>=fromRow;)
-            table.setRowHeight(row, getRowBounds(row).height);
+        if (table.getRowGeometry() != null) {
+            revalidate();
+            repaint();
+        } else {
+            for (int row=toRow; --row>=fromRow;)
+                table.setRowHeight(row, getRowBounds(row).height);
+        }
         if (rowHeader != null)
             updateRowHeaderHeights(fromRow, toRow);
     }
@@ -1910,10 +1961,12 @@ public class TreeTable extends JComponent implements Scrollable {
                                 fireTreeNodesInserted(path, childIndices, childNodes);
                         } else {
                             SorterHelper help = new SorterHelper(sorter, childIndices, childNodes);
-                            if (help.useAllChanged()) {
-                                sorter.allRowsChanged();
-                            } else {
+                            if (!help.useAllChanged()) {
                                 sorter.rowsInserted(help.firstRow, help.lastRow);
+                            } else if (sorter instanceof DefaultTreeTableSorter.NodeSorter) {
+                                ((DefaultTreeTableSorter<?,?,?>.NodeSorter)sorter).rowsInserted(childIndices);
+                            } else {
+                                sorter.allRowsChanged();
                             }
                             if (help.computeView())
                                 fireTreeNodesInserted(path, help.viewIndices, help.viewNodes);
@@ -1944,10 +1997,12 @@ public class TreeTable extends JComponent implements Scrollable {
                             SorterHelper help = new SorterHelper(sorter, childIndices, childNodes);
                             if (help.computeView())
                                 fireTreeNodesRemoved(path, help.viewIndices, help.viewNodes);
-                            if (help.useAllChanged()) {
-                                sorter.allRowsChanged();
-                            } else {
+                            if (!help.useAllChanged()) {
                                 sorter.rowsDeleted(help.firstRow, help.lastRow);
+                            } else if (sorter instanceof DefaultTreeTableSorter.NodeSorter) {
+                                ((DefaultTreeTableSorter<?,?,?>.NodeSorter)sorter).rowsDeleted(childIndices);
+                            } else {
+                                sorter.allRowsChanged();
                             }
                         }
                     } finally {
@@ -2274,40 +2329,108 @@ public class TreeTable extends JComponent implements Scrollable {
             return index;
         }
 
+        /**
+         * Paths whose bounds have been invalidated, in the order
+         * of the requests, that have not yet been reported.
+         */
+        private final LinkedHashSet<TreePath> pendingInvalidations = new LinkedHashSet<TreePath>();
+
+        private boolean invalidationFlushScheduled;
+
+        long coalescedInvalidationCount;
+
+        /**
+         * Invalidates the bounds of the nodes displayed in a range
+         * of rows. The invalidations are reported when control
+         * returns to the event loop.
+         */
         public void invalidateRows(int firstRow, int lastRow) {
-            if (firstRow == lastRow) {
-                invalidatePath(getPathForRow(firstRow));
-            } else {
-                HashMap<TreePath,ArrayList<Object>> map = new HashMap<TreePath,ArrayList<Object>>();
-                int row = firstRow;
-                TreePath path = getPathForRow(row);
+            for (int row=firstRow; row<=lastRow; row++)
+                addInvalidation(getPathForRow(row));
+        }
+
+        void addInvalidation(TreePath path) {
+            if (!pendingInvalidations.add(path)) {
+                coalescedInvalidationCount++;
+                return;
+            }
+            if (!invalidationFlushScheduled) {
+                invalidationFlushScheduled = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        flushInvalidations();
+                    }
+                });
+            }
+        }
+
+        void discardInvalidations() {
+            coalescedInvalidationCount += pendingInvalidations.size();
+            pendingInvalidations.clear();
+        }
+
+        /**
+         * Reports the pending invalidations. The nodes are grouped
+         * by parent, so that one event is fired for each parent.
+         * For variable row heights, the table row heights are then
+         * updated once, for the range of affected rows.
+         */
+        public void flushInvalidations() {
+            invalidationFlushScheduled = false;
+            if (pendingInvalidations.isEmpty())
+                return;
+            TreePath[] paths = pendingInvalidations.toArray(
+                    new TreePath[pendingInvalidations.size()]);
+            pendingInvalidations.clear();
+
+            LinkedHashMap<TreePath,ArrayList<Object>> map = new LinkedHashMap<TreePath,ArrayList<Object>>();
+            boolean variable = getRowHeight() <= 0;
+            int firstRow = Integer.MAX_VALUE;
+            int lastRow = -1;
+            for (TreePath path : paths) {
+                if (variable) {
+                    int row = getRowForPath(path);
+                    if (row >= 0) {
+                        firstRow = Math.min(firstRow, row);
+                        lastRow = Math.max(lastRow, row);
+                    }
+                }
                 TreePath parentPath = path.getParentPath();
                 if (parentPath == null) {
                     invalidatePaths(path, null, null);
-                    path = getPathForRow(++row);
-                    parentPath = path.getParentPath();
+                    continue;
                 }
-                for (;;) {
-                    ArrayList<Object> list = map.get(parentPath);
-                    if (list == null) {
-                        list = new ArrayList<Object>();
-                        map.put(parentPath, list);
-                    }
-                    list.add(path.getLastPathComponent());
-                    if (++row > lastRow)
-                        break;
-                    path = getPathForRow(row);
-                    parentPath = path.getParentPath();
+                ArrayList<Object> list = map.get(parentPath);
+                if (list == null) {
+                    list = new ArrayList<Object>();
+                    map.put(parentPath, list);
+                } else {
+                    coalescedInvalidationCount++;
                 }
-                for (Map.Entry<TreePath,ArrayList<Object>> entry : map.entrySet()) {
-                    Object parentNode = entry.getKey().getLastPathComponent();
-                    Object[] childNodes = entry.getValue().toArray();
-                    int[] childIndices = new int[childNodes.length];
-                    for (int i=childNodes.length; --i>=0;)
-                        childIndices[i] = getIndexOfChild(parentNode, childNodes[i]);
-                    invalidatePaths(entry.getKey(), childIndices, childNodes);
+                list.add(path.getLastPathComponent());
+            }
+            for (Map.Entry<TreePath,ArrayList<Object>> entry : map.entrySet()) {
+                Object parentNode = entry.getKey().getLastPathComponent();
+                ArrayList<Object> nodes = entry.getValue();
+                int[] childIndices = new int[nodes.size()];
+                int len = 0;
+                for (Object node : nodes) {
+                    int index = getIndexOfChild(parentNode, node);
+                    if (index >= 0)
+                        childIndices[len++] = index;
                 }
-            }
+                if (len == 0)
+                    continue;
+                if (len < childIndices.length)
+                    childIndices = Arrays.copyOf(childIndices, len);
+                Arrays.sort(childIndices);
+                Object[] childNodes = new Object[len];
+                for (int i=len; --i>=0;)
+                    childNodes[i] = getChild(parentNode, childIndices[i]);
+                invalidatePaths(entry.getKey(), childIndices, childNodes);
+            }
+            if (variable && lastRow >= 0)
+                updateTableRowHeights(firstRow, lastRow+1);
         }
 
         void _invalidateRows(int firstRow, int lastRow) {
@@ -82,6 +82,8 @@ public class BasicTreeTableUI extends TreeTableUI {
             treeTable.setFocusRenderer(createFocusRenderer());
         tree = createAndConfigureTree();
         table = createAndConfigureTable();
+        if (table instanceof InternalTableWithMargins)
+            ((InternalTableWithMargins)table).setRowGeometry(new TreeRowGeometry(tree));
         finishConfiguration(tree, table);
         treeTableCellRenderer = createCellRenderer();
         treeTableCellEditor = createCellEditor();
@@ -305,6 +307,8 @@ public class BasicTreeTableUI extends TreeTableUI {
     }
 
     protected void unconfigureTable() {
+        if (table instanceof InternalTableWithMargins)
+            ((InternalTableWithMargins)table).setRowGeometry(null);
         table.setTableHeader(null);
         table.setModel(new DefaultTableModel());
         table.setColumnModel(new DefaultTableColumnModel());
@@ -964,6 +968,43 @@ public class BasicTreeTableUI extends TreeTableUI {
         }
     }
 
+    /**
+     * The row geometry of the tree, which is shared with the table.
+     */
+    private static class TreeRowGeometry implements RowGeometry {
+
+        TreeRowGeometry(JTree tree) {
+            this.tree = tree;
+        }
+
+        private final JTree tree;
+
+        private final Insets insets = new Insets(0, 0, 0, 0);
+
+        @Override
+        public boolean hasVariableRowHeights() {
+            return tree.getRowHeight() <= 0;
+        }
+
+        @Override
+        public int getRowCount() {
+            return tree.getRowCount();
+        }
+
+        @Override
+        public Rectangle getRowBounds(int row) {
+            Rectangle r = tree.getRowBounds(row);
+            if (r != null)
+                r.y -= tree.getInsets(insets).top;
+            return r;
+        }
+
+        @Override
+        public int getClosestRowForY(int y) {
+            return tree.getClosestRowForLocation(0, y + tree.getInsets(insets).top);
+        }
+    }
+
     private class Table extends InternalTableWithMargins implements TableInterface, ProcessKeyBinding {
 
         Table(TableModel tm, TableColumnModel cm, ListSelectionModel sm) {
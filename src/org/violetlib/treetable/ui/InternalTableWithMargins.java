@@ -18,6 +18,7 @@ import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static org.violetlib.aqua.AquaTableUI.INSET_VIEW_MARGIN_KEY;
 import static org.violetlib.aqua.AquaTableUI.INSET_VIEW_VERTICAL_MARGIN_KEY;
@@ -32,6 +33,7 @@ public class InternalTableWithMargins
 
     private int margin;
     private int verticalMargin;
+    private @Nullable RowGeometry rowGeometry;
 
     public InternalTableWithMargins(TableModel dm, TableColumnModel cm, ListSelectionModel sm)
     {
@@ -74,6 +76,53 @@ public class InternalTableWithMargins
     {
     }
 
+    /**
+     Specify a row geometry that defines the heights of the rows when the rows have variable heights. A table that uses
+     a row geometry does not need to be informed of the height of each row.
+     */
+
+    public void setRowGeometry(@Nullable RowGeometry g)
+    {
+        if (g != rowGeometry) {
+            rowGeometry = g;
+            resizeAndRepaint();
+        }
+    }
+
+    public @Nullable RowGeometry getRowGeometry()
+    {
+        return rowGeometry;
+    }
+
+    /**
+     Return the row geometry if it defines the bounds of the specified row.
+     */
+
+    private @Nullable RowGeometry getRowGeometry(int row)
+    {
+        RowGeometry g = rowGeometry;
+        if (g != null && g.hasVariableRowHeights() && row >= 0) {
+            int rowCount = getRowCount();
+            if (row < rowCount && g.getRowCount() == rowCount) {
+                return g;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getRowHeight(int row)
+    {
+        RowGeometry g = getRowGeometry(row);
+        if (g != null) {
+            Rectangle bounds = g.getRowBounds(row);
+            if (bounds != null) {
+                return bounds.height;
+            }
+        }
+        return super.getRowHeight(row);
+    }
+
     @Override
     public void doLayout()
     {
@@ -101,6 +150,15 @@ public class InternalTableWithMargins
         if (margin > 0 || verticalMargin > 0) {
             point = new Point(point.x - margin, point.y - verticalMargin);
         }
+        RowGeometry g = getRowGeometry(0);
+        if (g != null) {
+            if (point.y < 0) {
+                return -1;
+            }
+            int row = g.getClosestRowForY(point.y);
+            Rectangle bounds = row >= 0 ? g.getRowBounds(row) : null;
+            return bounds != null && point.y < bounds.y + bounds.height ? row : -1;
+        }
         return super.rowAtPoint(point);
     }
 
@@ -108,6 +166,15 @@ public class InternalTableWithMargins
     public @NotNull Rectangle getCellRect(int row, int column, boolean includeSpacing)
     {
         Rectangle r = super.getCellRect(row, column, includeSpacing);
+        RowGeometry g = getRowGeometry(row);
+        if (g != null) {
+            Rectangle bounds = g.getRowBounds(row);
+            if (bounds != null) {
+                int rowMargin = includeSpacing ? 0 : getRowMargin();
+                r.y = bounds.y + rowMargin / 2;
+                r.height = bounds.height - rowMargin;
+            }
+        }
         if ((margin > 0 || verticalMargin > 0) && columnModel.getColumnCount() > 0) {
             r.x += margin;
             r.y += verticalMargin;
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2026 Alan Snyder.
+ * All rights reserved.
+ *
+ * You may not use, copy or modify this file, except in compliance with the license agreement. For details see
+ * accompanying license terms.
+ */
+
+package org.violetlib.treetable.ui;
+
+import java.awt.*;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The vertical geometry of the rows of a tree table. The tree and the tables of a tree table share one row geometry,
+ * maintained by the tree layout, so that the row heights of the tree need not be copied to the tables one row at a
+ * time. A table that uses a row geometry needs only to be revalidated and repainted when the row heights change.
+ */
+
+public interface RowGeometry
+{
+    /**
+     * Determine whether the rows may have different heights. If not, the row geometry is not used and the rows of a
+     * table have the row height of the table.
+     */
+
+    boolean hasVariableRowHeights();
+
+    /**
+     * Return the number of rows.
+     */
+
+    int getRowCount();
+
+    /**
+     * Return the bounds of a row. Only the Y origin and the height are defined. The Y origin of the first row is zero.
+     * @return the bounds, or null if the row is not valid.
+     */
+
+    @Nullable Rectangle getRowBounds(int row);
+
+    /**
+     * Return the row whose bounds contain the specified Y location or, if there is no such row, the row closest to it.
+     * @return the row index, or -1 if there are no rows.
+     */
+
+    int getClosestRowForY(int y);
+}
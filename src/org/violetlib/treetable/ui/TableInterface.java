@@ -108,6 +108,13 @@ public interface TableInterface extends Scrollable {
 
     void setRowHeight(int row, int height);
 
+    /**
+     * Returns the row geometry that defines the row heights when
+     * rows have variable heights, or null if the row heights must
+     * be set on the table.
+     */
+    RowGeometry getRowGeometry();
+
     void doLayout();
 
     boolean editCellAt(int row, int column);